@@ -0,0 +1,14 @@
+package searchengine.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+@Data
+@Component
+@ConfigurationProperties(prefix = "content-store")
+public class ConfigContentStore {
+    private String path = "data/content";   // Каталог с файлами сегментов
+    private long segmentSize = 64L << 20;   // Размер сегмента, после которого начинается новый (байт)
+    private int cacheSize = 256;            // Сколько распакованных записей держать в LRU-кэше
+}
@@ -13,6 +13,8 @@ public class ConfigIndexing {
     private DelayConfig delay;
     private int timeout;
     private int batch_pause;
+    private boolean positions = false; // Хранить позиции слов: фразовый поиск и быстрые сниппеты
+    private double stopLemmaRatio = 0.98; // Доля страниц сайта, начиная с которой лемма считается стоп-леммой
 
     @Data
     public static class DelayConfig {
@@ -0,0 +1,15 @@
+package searchengine.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+@Data
+@Component
+@ConfigurationProperties(prefix = "lemma")
+public class ConfigLemma {
+    private int cacheSize = 200_000; // Сколько словоформ хранит кэш лемматизации
+    private int warmUp = 10_000;     // Сколько самых частых лемм загрузить в кэш при старте (0 - не прогревать)
+    private int queryCacheSize = 10_000; // Сколько разобранных поисковых запросов хранить в кэше
+    private String snapshotPath = "data/morphology"; // Каталог двоичных снимков словарей (пусто - всегда разбирать jar)
+}
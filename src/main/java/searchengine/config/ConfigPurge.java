@@ -0,0 +1,13 @@
+package searchengine.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+@Data
+@Component
+@ConfigurationProperties(prefix = "purge")
+public class ConfigPurge {
+    private int chunkSize = 1000; // Сколько строк удаляется за одну транзакцию
+    private int pause = 50;       // Пауза между порциями (мс), чтобы не мешать индексации
+}
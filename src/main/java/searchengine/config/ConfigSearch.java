@@ -0,0 +1,19 @@
+package searchengine.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+@Data
+@Component
+@ConfigurationProperties(prefix = "search")
+public class ConfigSearch {
+    private String mode = "memory"; // memory - инвертированный индекс в памяти, database - сопоставление и ранжирование SQL-запросом
+    private int resultCacheSize = 1000; // Сколько готовых ответов поиска хранить в кэше (0 - отключить)
+    private String filterPath = "data/filters";     // Каталог фильтров Блума по леммам сайтов (пусто - не сохранять)
+    private double filterFalsePositiveRate = 0.01; // Доля ложных «лемма может быть на сайте»
+    private int threads = Runtime.getRuntime().availableProcessors(); // Потоков для параллельного поиска по сайтам
+    private long deadlineMs = 2000; // Срок поиска по сайту; опоздавшие сайты не попадают в выдачу (partial)
+    private String suggestPath = "data/suggest"; // Каталог автоматов подсказок по сайтам (пусто - не сохранять)
+    private boolean pruning = false; // Block-Max WAND: пропуск блоков страниц, не способных войти в выдачу (count - нижняя оценка)
+}
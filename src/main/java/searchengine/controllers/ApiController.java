@@ -2,19 +2,30 @@ package searchengine.controllers;
 
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.http.ResponseEntity;
+import searchengine.dto.corpus.CorpusSiteStats;
 import searchengine.dto.indexing.IndexingResponse;
+import searchengine.dto.purge.PurgeProgress;
 import searchengine.dto.site.AddSiteRequest;
 import searchengine.dto.site.AddSiteResponse;
 import org.springframework.web.bind.annotation.*;
 import searchengine.dto.site.DeleteSiteResponse;
 import searchengine.dto.statistics.StatisticsResponse;
+import searchengine.services.CorpusStatisticsService;
 import searchengine.services.IndexingService;
+import searchengine.services.InvertedIndexService;
+import searchengine.services.LemmaFilterService;
+import searchengine.services.LemmaService;
+import searchengine.services.PurgeService;
+import searchengine.services.QueryAnalyzerService;
 import searchengine.services.SearchService;
 import searchengine.services.SiteService;
 import searchengine.services.StatisticsService;
+import searchengine.services.SuggestService;
 
 import javax.validation.Valid;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 
 @Slf4j
@@ -25,15 +36,36 @@ public class ApiController {
     private final SiteService siteService;
     private final IndexingService indexingService;
     private final SearchService searchService;
+    private final PurgeService purgeService;
+    private final LemmaService lemmaService;
+    private final QueryAnalyzerService queryAnalyzerService;
+    private final InvertedIndexService invertedIndexService;
+    private final CorpusStatisticsService corpusStatisticsService;
+    private final LemmaFilterService lemmaFilterService;
+    private final SuggestService suggestService;
 
     public ApiController(StatisticsService statisticsService,
                          SiteService siteService,
                          IndexingService indexingService,
-                         SearchService searchService) {
+                         SearchService searchService,
+                         PurgeService purgeService,
+                         LemmaService lemmaService,
+                         QueryAnalyzerService queryAnalyzerService,
+                         InvertedIndexService invertedIndexService,
+                         CorpusStatisticsService corpusStatisticsService,
+                         LemmaFilterService lemmaFilterService,
+                         SuggestService suggestService) {
         this.statisticsService = statisticsService;
         this.siteService = siteService;
         this.indexingService = indexingService;
         this.searchService = searchService;
+        this.purgeService = purgeService;
+        this.lemmaService = lemmaService;
+        this.queryAnalyzerService = queryAnalyzerService;
+        this.invertedIndexService = invertedIndexService;
+        this.corpusStatisticsService = corpusStatisticsService;
+        this.lemmaFilterService = lemmaFilterService;
+        this.suggestService = suggestService;
     }
 
     @GetMapping("/statistics")
@@ -53,6 +85,29 @@ public class ApiController {
         return ResponseEntity.status(response.isResult() ? 200 : 400).body(response);
     }
 
+    @GetMapping("/purges")
+    public ResponseEntity<List<PurgeProgress>> purges() {
+        return ResponseEntity.ok(purgeService.getProgress());
+    }
+
+    @GetMapping("/metrics")
+    public ResponseEntity<Map<String, Object>> metrics() {
+        Map<String, Object> response = new LinkedHashMap<>();
+        response.put("lemmaCache", lemmaService.getCacheStats());
+        response.put("queryCache", queryAnalyzerService.getCacheStats());
+        response.put("resultCache", searchService.getCacheStats());
+        response.put("startup", lemmaService.getStartupStats());
+        response.put("invertedIndex", invertedIndexService.getStats());
+        response.put("lemmaFilters", lemmaFilterService.getStats());
+        response.put("suggest", suggestService.getStats());
+        return ResponseEntity.ok(response);
+    }
+
+    @GetMapping("/corpusStats")
+    public ResponseEntity<List<CorpusSiteStats>> corpusStats() {
+        return ResponseEntity.ok(corpusStatisticsService.describe());
+    }
+
     @GetMapping("/startIndexing")
     public ResponseEntity<IndexingResponse> startIndexing(@RequestParam(required = false) String site) {
         IndexingResponse response = new IndexingResponse();
@@ -102,6 +157,16 @@ public class ApiController {
         return ResponseEntity.ok(response);
     }
 
+    @GetMapping("/suggest")
+    public ResponseEntity<Map<String, Object>> suggest(
+            @RequestParam String query,
+            @RequestParam(required = false) String site,
+            @RequestParam(defaultValue = "10") int limit) {
+
+        Map<String, Object> response = searchService.suggest(query, site, limit);
+        return ResponseEntity.ok(response);
+    }
+
     @PostMapping("/indexPage")
     public ResponseEntity<Map<String, Object>> indexPage(@RequestParam String url) {
         Map<String, Object> response = new HashMap<>();
@@ -0,0 +1,15 @@
+package searchengine.dto.corpus;
+
+import lombok.Data;
+
+import java.util.Map;
+
+@Data
+public class CorpusSiteStats {
+    private int siteId;
+    private String site;
+    private int generation;
+    private long pages;
+    private int lemmas;               // -1 - частоты лемм ещё не загружены
+    private Map<String, Integer> topLemmas; // Самые частые леммы: лемма -> количество страниц
+}
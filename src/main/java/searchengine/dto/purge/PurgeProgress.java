@@ -0,0 +1,16 @@
+package searchengine.dto.purge;
+
+import lombok.Data;
+
+@Data
+public class PurgeProgress {
+    private String site;
+    private Integer generation; // null - удаляется весь сайт
+    private String state;
+    private long deletedIndexes;
+    private long deletedLemmas;
+    private long deletedPages;
+    private long startTime;
+    private long finishTime;
+    private String error;
+}
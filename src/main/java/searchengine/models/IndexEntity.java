@@ -7,7 +7,10 @@ import javax.persistence.*;
 @Getter
 @Setter
 @Entity
-@Table(name = "index_table")
+@Table(name = "index_table", indexes = {
+        // Покрывающий индекс: поиск по леммам читает page_id и rank_count, не обращаясь к строкам
+        @Index(name = "idx_index_lemma_page_rank", columnList = "lemma_id, page_id, rank_count")
+})
 public class IndexEntity {
     @Id
     @GeneratedValue(strategy = GenerationType.IDENTITY)
@@ -7,7 +7,10 @@ import javax.persistence.*;
 @Getter
 @Setter
 @Entity
-@Table(name = "lemma")
+@Table(name = "lemma", indexes = {
+        @Index(name = "idx_lemma_site_generation_term", columnList = "site_id, generation, term_id"),
+        @Index(name = "idx_lemma_term", columnList = "term_id")
+})
 public class LemmaEntity {
     @Id
     @GeneratedValue(strategy = GenerationType.IDENTITY)
@@ -17,9 +20,15 @@ public class LemmaEntity {
     @JoinColumn(name = "site_id", nullable = false)
     private SiteEntity site;
 
-    @Column(columnDefinition = "VARCHAR(255) NOT NULL")
-    private String lemma;
+    @Column(name = "term_id", nullable = false)
+    private Integer termId; // id леммы в глобальном словаре term
+
+    @Column(columnDefinition = "INT NOT NULL DEFAULT 0")
+    private Integer generation; // Поколение индекса сайта, в которое записана строка
 
     @Column(nullable = false)
     private Integer frequency;
+
+    @Column(name = "stop_lemma", columnDefinition = "BIT NOT NULL DEFAULT 0")
+    private Boolean stopLemma = false; // Слишком частая лемма: записи индекса для неё не создаются
 }
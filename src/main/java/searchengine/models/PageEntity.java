@@ -8,7 +8,8 @@ import javax.persistence.*;
 @Setter
 @Entity
 @Table(name = "page", indexes = {
-        @Index(name = "idx_path", columnList = "path")
+        @Index(name = "idx_path", columnList = "path"),
+        @Index(name = "idx_page_site_generation", columnList = "site_id, generation")
 })
 public class PageEntity {
     @Id
@@ -22,12 +23,22 @@ public class PageEntity {
     @Column(columnDefinition = "VARCHAR(500) NOT NULL")
     private String path;
 
+    @Column(columnDefinition = "INT NOT NULL DEFAULT 0")
+    private Integer generation; // Поколение индекса сайта, в которое записана строка
+
     @Column(nullable = false)
     private Integer code;
 
-    @Column(columnDefinition = "MEDIUMTEXT")
-    private String contentHtml; // Полный HTML для сниппетов
+    // Содержимое страницы хранится сжатым в ContentStore, здесь только ссылки на записи
+    @Column(name = "html_ref")
+    private Long htmlRef; // Полный HTML для заголовков
+
+    @Column(name = "text_ref")
+    private Long textRef; // Чистый текст для сниппетов
+
+    @Column(name = "positions_ref")
+    private Long positionsRef; // Позиции слов в тексте (только при включённом позиционном индексе)
 
-    @Column(columnDefinition = "MEDIUMTEXT")
-    private String contentText; // Чистый текст для поиска
+    @Column(name = "sentences_ref")
+    private Long sentencesRef; // Границы предложений чистого текста для сниппетов
 }
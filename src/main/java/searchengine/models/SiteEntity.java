@@ -29,4 +29,13 @@ public class SiteEntity {
 
     @Column(columnDefinition = "VARCHAR(255) NOT NULL")
     private String name;
+
+    @Column(name = "active_generation", columnDefinition = "INT NOT NULL DEFAULT 0")
+    private Integer activeGeneration = 0; // Поколение индекса, которое сейчас обслуживает поиск
+
+    @Column(name = "next_generation", columnDefinition = "INT NOT NULL DEFAULT 0")
+    private Integer nextGeneration = 0; // Монотонный счётчик: номера поколений никогда не переиспользуются
+
+    @Column(columnDefinition = "BIT NOT NULL DEFAULT 0")
+    private Boolean deleted = false; // Сайт удалён логически, данные удаляются в фоне
 }
@@ -0,0 +1,21 @@
+package searchengine.models;
+
+import lombok.Getter;
+import lombok.Setter;
+import javax.persistence.*;
+
+@Getter
+@Setter
+@Entity
+@Table(name = "term", indexes = {
+        @Index(name = "idx_term_lemma", columnList = "lemma", unique = true)
+})
+public class TermEntity {
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Integer id;
+
+    // Бинарное сравнение: "елка" и "ёлка" - разные леммы
+    @Column(columnDefinition = "VARCHAR(255) COLLATE utf8mb4_bin NOT NULL")
+    private String lemma;
+}
@@ -9,6 +9,7 @@ import searchengine.models.IndexEntity;
 import searchengine.models.LemmaEntity;
 import searchengine.models.PageEntity;
 
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
@@ -20,6 +21,30 @@ public interface IndexRepository extends JpaRepository<IndexEntity, Integer> {
     //Найти все записи индекса для страницы
     List<IndexEntity> findByPage(PageEntity page);
 
+    //Получить id страниц и ранги леммы по возрастанию id страницы (без загрузки сущностей)
+    @Query("SELECT i.page.id, i.rank_count FROM IndexEntity i WHERE i.lemma = :lemma ORDER BY i.page.id")
+    List<Object[]> findPostingsByLemma(@Param("lemma") LemmaEntity lemma);
+
+    //Страницы, содержащие не меньше required лемм из списка, по убыванию суммы рангов: id страницы и сумма.
+    //Леммы одного сайта - разные строки lemma, поэтому required = числу лемм сайта означает «все леммы»
+    @Query(value = "SELECT i.page_id, SUM(i.rank_count) AS relevance FROM index_table i " +
+            "WHERE i.lemma_id IN (:lemmaIds) " +
+            "GROUP BY i.page_id HAVING COUNT(*) >= :required " +
+            "ORDER BY relevance DESC, i.page_id LIMIT :limit OFFSET :offset", nativeQuery = true)
+    List<Object[]> searchPages(@Param("lemmaIds") Collection<Integer> lemmaIds,
+                               @Param("required") int required,
+                               @Param("limit") int limit,
+                               @Param("offset") int offset);
+
+    //Количество страниц, содержащих не меньше required лемм из списка, и наибольшая сумма рангов
+    @Query(value = "SELECT COUNT(*), MAX(t.relevance) FROM (" +
+            "SELECT SUM(i.rank_count) AS relevance FROM index_table i " +
+            "WHERE i.lemma_id IN (:lemmaIds) " +
+            "GROUP BY i.page_id HAVING COUNT(*) >= :required" +
+            ") t", nativeQuery = true)
+    List<Object[]> countSearchResults(@Param("lemmaIds") Collection<Integer> lemmaIds,
+                                      @Param("required") int required);
+
     //Найти запись индекса по странице и лемме
     @Query("SELECT i FROM IndexEntity i WHERE i.page = :page AND i.lemma = :lemma")
     Optional<IndexEntity> findByPageAndLemma(@Param("page") PageEntity page,
@@ -34,6 +59,18 @@ public interface IndexRepository extends JpaRepository<IndexEntity, Integer> {
             "WHERE s.url = :siteUrl", nativeQuery = true)
     void deleteBySiteUrl(@Param("siteUrl") String siteUrl);
 
+    //Удалить все записи индекса поколения сайта
+    @Modifying
+    @Query(value = "DELETE i FROM index_table i " +
+            "INNER JOIN page p ON i.page_id = p.id " +
+            "WHERE p.site_id = :siteId AND p.generation = :generation", nativeQuery = true)
+    void deleteBySiteIdAndGeneration(@Param("siteId") Integer siteId, @Param("generation") Integer generation);
+
+    //Удалить не более limit записей индекса для списка страниц (для удаления порциями)
+    @Modifying
+    @Query(value = "DELETE FROM index_table WHERE page_id IN (:pageIds) LIMIT :limit", nativeQuery = true)
+    int deleteChunkByPageIds(@Param("pageIds") List<Integer> pageIds, @Param("limit") int limit);
+
     //Удалить все записи индекса для страницы
     @Modifying
     @Query("DELETE FROM IndexEntity i WHERE i.page = :page")
@@ -8,19 +8,26 @@ import org.springframework.stereotype.Repository;
 import searchengine.models.LemmaEntity;
 import searchengine.models.SiteEntity;
 
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
 @Repository
 public interface LemmaRepository  extends JpaRepository<LemmaEntity, Integer> {
-    //Найти лемму по сайту и тексту леммы
-    Optional<LemmaEntity> findBySiteAndLemma(SiteEntity site, String lemma);
+    //Найти лемму по сайту, поколению индекса и id термина
+    Optional<LemmaEntity> findBySiteAndGenerationAndTermId(SiteEntity site, Integer generation, Integer termId);
+
+    //Найти леммы активных поколений сайтов по списку id терминов (один запрос на все сайты)
+    @Query("SELECT l FROM LemmaEntity l JOIN FETCH l.site s " +
+            "WHERE s IN :sites AND l.termId IN :termIds AND l.generation = s.activeGeneration")
+    List<LemmaEntity> findActiveBySitesAndTermIds(@Param("sites") Collection<SiteEntity> sites,
+                                                  @Param("termIds") Collection<Integer> termIds);
 
     //Найти все леммы сайта
     List<LemmaEntity> findBySite(SiteEntity site);
 
-    //Найти леммы по тексту (для поиска по всем сайтам)
-    List<LemmaEntity> findByLemma(String lemma);
+    //Найти леммы по id термина (для поиска по всем сайтам)
+    List<LemmaEntity> findByTermId(Integer termId);
 
     //Найти леммы сайта отсортированные по частоте (возрастание)
     @Query("SELECT l FROM LemmaEntity l WHERE l.site = :site ORDER BY l.frequency ASC")
@@ -47,6 +54,32 @@ public interface LemmaRepository  extends JpaRepository<LemmaEntity, Integer> {
     @Query("SELECT COUNT(l) FROM LemmaEntity l WHERE l.site = :site")
     long countBySite(@Param("site") SiteEntity site);
 
+    //Получить количество лемм поколения индекса сайта
+    @Query("SELECT COUNT(l) FROM LemmaEntity l WHERE l.site = :site AND l.generation = :generation")
+    long countBySiteAndGeneration(@Param("site") SiteEntity site, @Param("generation") Integer generation);
+
+    //Найти поколения сайта, отличные от указанного (теневые и устаревшие)
+    @Query("SELECT DISTINCT l.generation FROM LemmaEntity l WHERE l.site = :site AND l.generation <> :generation")
+    List<Integer> findOtherGenerations(@Param("site") SiteEntity site, @Param("generation") Integer generation);
+
+    //Удалить все леммы поколения индекса сайта
+    @Modifying
+    @Query(value = "DELETE FROM lemma WHERE site_id = :siteId AND generation = :generation", nativeQuery = true)
+    void deleteBySiteIdAndGeneration(@Param("siteId") Integer siteId, @Param("generation") Integer generation);
+
+    //Найти порцию id лемм поколения сайта после указанного id (для удаления порциями)
+    @Query(value = "SELECT id FROM lemma WHERE site_id = :siteId AND generation = :generation " +
+            "AND id > :afterId ORDER BY id LIMIT :limit", nativeQuery = true)
+    List<Integer> findIdChunk(@Param("siteId") Integer siteId,
+                              @Param("generation") Integer generation,
+                              @Param("afterId") Integer afterId,
+                              @Param("limit") int limit);
+
+    //Удалить леммы по списку id
+    @Modifying
+    @Query(value = "DELETE FROM lemma WHERE id IN (:ids)", nativeQuery = true)
+    int deleteByIds(@Param("ids") List<Integer> ids);
+
     //Найти леммы с частотой больше указанной
     @Query("SELECT l FROM LemmaEntity l WHERE l.site = :site AND l.frequency > :frequency")
     List<LemmaEntity> findBySiteAndFrequencyGreaterThan(@Param("site") SiteEntity site,
@@ -51,6 +51,37 @@ public interface PageRepository extends JpaRepository<PageEntity, Integer> {
     @Query("SELECT p.path FROM PageEntity p WHERE p.site = :site")
     List<String> findPathsBySite(@Param("site") SiteEntity site);
 
+    //Найти все страницы поколения индекса сайта
+    @Query("SELECT p FROM PageEntity p WHERE p.site = :site AND p.generation = :generation")
+    List<PageEntity> findBySiteAndGeneration(@Param("site") SiteEntity site,
+                                             @Param("generation") Integer generation);
+
+    //Получить количество страниц поколения индекса сайта
+    @Query("SELECT COUNT(p) FROM PageEntity p WHERE p.site = :site AND p.generation = :generation")
+    long countBySiteAndGeneration(@Param("site") SiteEntity site, @Param("generation") Integer generation);
+
+    //Найти поколения сайта, отличные от указанного (теневые и устаревшие)
+    @Query("SELECT DISTINCT p.generation FROM PageEntity p WHERE p.site = :site AND p.generation <> :generation")
+    List<Integer> findOtherGenerations(@Param("site") SiteEntity site, @Param("generation") Integer generation);
+
+    //Удалить все страницы поколения индекса сайта
+    @Modifying
+    @Query(value = "DELETE FROM page WHERE site_id = :siteId AND generation = :generation", nativeQuery = true)
+    void deleteBySiteIdAndGeneration(@Param("siteId") Integer siteId, @Param("generation") Integer generation);
+
+    //Найти порцию id страниц поколения сайта после указанного id (для удаления порциями)
+    @Query(value = "SELECT id FROM page WHERE site_id = :siteId AND generation = :generation " +
+            "AND id > :afterId ORDER BY id LIMIT :limit", nativeQuery = true)
+    List<Integer> findIdChunk(@Param("siteId") Integer siteId,
+                              @Param("generation") Integer generation,
+                              @Param("afterId") Integer afterId,
+                              @Param("limit") int limit);
+
+    //Удалить страницы по списку id
+    @Modifying
+    @Query(value = "DELETE FROM page WHERE id IN (:ids)", nativeQuery = true)
+    int deleteByIds(@Param("ids") List<Integer> ids);
+
     //Найти страницы с содержимым, содержащим текст
     //@Query("SELECT p FROM PageEntity p WHERE p.content LIKE %:text%")
     //List<PageEntity> findByContentTextContaining(@Param("text") String text);
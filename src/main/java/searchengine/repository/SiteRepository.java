@@ -20,6 +20,14 @@ public interface SiteRepository extends JpaRepository<SiteEntity, Integer> {
     //Найти сайт по имени
     Optional<SiteEntity> findByName(String name);
 
+    //Найти все сайты, кроме логически удалённых
+    List<SiteEntity> findByDeletedFalse();
+
+    //Пометить сайт как логически удалённый (сразу исключается из поиска)
+    @Modifying
+    @Query("UPDATE SiteEntity s SET s.deleted = true WHERE s.id = :id")
+    void markDeleted(@Param("id") Integer id);
+
     //Найти все сайты по статусу
     List<SiteEntity> findByStatus(SiteStatus status);
 
@@ -47,6 +55,15 @@ public interface SiteRepository extends JpaRepository<SiteEntity, Integer> {
     @Query("UPDATE SiteEntity s SET s.statusTime = :statusTime WHERE s.id = :id")
     void updateStatusTime(@Param("id") Integer id, @Param("statusTime") LocalDateTime statusTime);
 
+    //Атомарно переключить поиск на новое поколение индекса
+    @Modifying
+    @Query("UPDATE SiteEntity s SET s.activeGeneration = :generation, s.status = :status, " +
+            "s.statusTime = :statusTime, s.lastError = NULL WHERE s.id = :id")
+    void switchGeneration(@Param("id") Integer id,
+                          @Param("generation") Integer generation,
+                          @Param("status") SiteStatus status,
+                          @Param("statusTime") LocalDateTime statusTime);
+
     //Проверить существует ли сайт с таким URL
     boolean existsByUrl(String url);
 
@@ -0,0 +1,28 @@
+package searchengine.repository;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import searchengine.models.TermEntity;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+
+@Repository
+public interface TermRepository extends JpaRepository<TermEntity, Integer> {
+    //Найти термин по тексту леммы
+    Optional<TermEntity> findByLemma(String lemma);
+
+    //Найти термины по списку лемм
+    List<TermEntity> findByLemmaIn(Collection<String> lemmas);
+
+    //Самые частые леммы активных поколений всех сайтов (для прогрева кэша лемматизации)
+    @Query(value = "SELECT t.lemma FROM lemma l " +
+            "JOIN site s ON s.id = l.site_id AND l.generation = s.active_generation " +
+            "JOIN term t ON t.id = l.term_id " +
+            "WHERE s.deleted = 0 " +
+            "GROUP BY t.id, t.lemma ORDER BY SUM(l.frequency) DESC LIMIT :limit", nativeQuery = true)
+    List<String> findMostFrequentLemmas(@Param("limit") int limit);
+}
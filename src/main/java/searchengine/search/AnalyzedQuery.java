@@ -0,0 +1,66 @@
+package searchengine.search;
+
+import java.util.*;
+
+/**
+ * Результат разбора поискового запроса, общий для всех этапов поиска.
+ * Объект неизменяемый и кэшируется по нормализованному тексту запроса.
+ *
+ * @param normalizedQuery  запрос в нижнем регистре с одинарными пробелами
+ * @param lemmas           леммы запроса в порядке появления
+ * @param surfaceForms     лемма -> формы слова, как они написаны в запросе
+ * @param phrases          обязательные фразы в кавычках
+ * @param root             дерево запроса с ИЛИ и исключениями
+ * @param siteFilters      хосты из операторов site: (пусто - без ограничения)
+ */
+public record AnalyzedQuery(String normalizedQuery,
+                            Set<String> lemmas,
+                            Map<String, Set<String>> surfaceForms,
+                            List<PhraseQuery> phrases,
+                            QueryNode.And root,
+                            List<String> siteFilters) {
+
+    /** Фраза запроса: леммы по порядку (null на месте служебных слов) и допуск близости */
+    public record PhraseQuery(List<String> lemmas, int slop) {
+        public PhraseQuery {
+            lemmas = Collections.unmodifiableList(new ArrayList<>(lemmas));
+        }
+    }
+
+    public AnalyzedQuery {
+        lemmas = Collections.unmodifiableSet(new LinkedHashSet<>(lemmas));
+        Map<String, Set<String>> forms = new LinkedHashMap<>();
+        surfaceForms.forEach((lemma, words) -> forms.put(lemma, Set.copyOf(words)));
+        surfaceForms = Collections.unmodifiableMap(forms);
+        phrases = List.copyOf(phrases);
+        siteFilters = List.copyOf(siteFilters);
+    }
+
+    public boolean isEmpty() {
+        return lemmas.isEmpty();
+    }
+
+    /** В запросе есть ИЛИ или исключения: страницы отбираются по дереву запроса */
+    public boolean isBoolean() {
+        return !root.excluded().isEmpty() || root.children().stream().anyMatch(QueryNode.Or.class::isInstance);
+    }
+
+    /** Леммы исключённых слов */
+    public Set<String> excludedLemmas() {
+        Set<String> excluded = new LinkedHashSet<>();
+        for (QueryNode node : root.excluded()) {
+            collectLemmas(node, excluded);
+        }
+        return excluded;
+    }
+
+    private static void collectLemmas(QueryNode node, Set<String> lemmas) {
+        if (node instanceof QueryNode.Term term) {
+            lemmas.add(term.lemma());
+        } else if (node instanceof QueryNode.Or or) {
+            or.children().forEach(child -> collectLemmas(child, lemmas));
+        } else if (node instanceof QueryNode.And and) {
+            and.children().forEach(child -> collectLemmas(child, lemmas));
+        }
+    }
+}
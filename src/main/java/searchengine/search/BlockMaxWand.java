@@ -0,0 +1,223 @@
+package searchengine.search;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Отбор лучших страниц с динамическим отсечением (Block-Max WAND).
+ * Верхняя граница релевантности страницы - сумма наибольших рангов блоков,
+ * в которых она может лежать. Если граница ниже порога кучи лучших страниц,
+ * блоки пропускаются целиком, не распаковываясь. Лучшие страницы совпадают
+ * с полным перебором; число совпадений при отсечении становится нижней оценкой
+ */
+public final class BlockMaxWand {
+
+    private BlockMaxWand() {
+    }
+
+    /**
+     * Страницы, содержащие все термины. При prune = false перебираются все совпадения.
+     * Возвращает true, если ни одно совпадение не было пропущено (число совпадений точное)
+     */
+    public static boolean conjunctive(List<PostingList> lists, TopKCollector topK, boolean prune) {
+        PostingList[] ordered = lists.toArray(new PostingList[0]);
+        Arrays.sort(ordered, Comparator.comparingInt(PostingList::size));
+        PostingList.Iterator[] cursors = new PostingList.Iterator[ordered.length];
+        for (int i = 0; i < ordered.length; i++) {
+            cursors[i] = ordered[i].iterator();
+        }
+        PostingList.Iterator lead = cursors[0];
+        boolean exact = true;
+        // Граница по текущим блокам списков действует до upTo: дальше начинается новый блок одного из них
+        double bound = Double.POSITIVE_INFINITY;
+        int upTo = -1;
+
+        int doc = lead.nextDoc();
+        while (doc != PostingCursor.NO_MORE_DOCS) {
+            if (prune && topK.isFull()) {
+                if (doc > upTo) {
+                    bound = 0;
+                    upTo = Integer.MAX_VALUE;
+                    for (PostingList list : ordered) {
+                        int block = list.blockOf(doc);
+                        if (block < 0) {
+                            return exact; // Один из списков кончился: совпадений больше нет, ничего не пропущено
+                        }
+                        bound += list.blockMaxRank(block);
+                        upTo = Math.min(upTo, list.blockLastDoc(block));
+                    }
+                }
+                if (cannotEnter(bound, topK, ordered.length)) {
+                    exact = false;
+                    doc = lead.advance(upTo + 1);
+                    continue;
+                }
+            }
+
+            int next = doc;
+            for (int i = 1; i < cursors.length && next == doc; i++) {
+                next = cursors[i].advance(doc);
+            }
+            if (next != doc) {
+                doc = lead.advance(next);
+                continue;
+            }
+            float score = 0;
+            for (PostingList.Iterator cursor : cursors) {
+                score += cursor.rank();
+            }
+            topK.collect(doc, score);
+            doc = lead.nextDoc();
+        }
+        return exact;
+    }
+
+    /**
+     * Страницы, содержащие хотя бы один термин (WAND с границами блоков).
+     * Возвращает true, если ни одна страница не была пропущена
+     */
+    public static boolean disjunctive(List<PostingList> lists, TopKCollector topK, boolean prune) {
+        int count = lists.size();
+        PostingList[] postings = lists.toArray(new PostingList[0]);
+        Cursor[] cursors = new Cursor[count];
+        int live = 0;
+        for (int i = 0; i < count; i++) {
+            Cursor cursor = new Cursor(i, postings[i]);
+            if (cursor.next() != PostingCursor.NO_MORE_DOCS) {
+                cursors[live++] = cursor;
+            }
+        }
+        boolean exact = true;
+        float[] ranks = new float[count];
+
+        while (live > 0) {
+            sortByDoc(cursors, live);
+            int pivot = 0;
+            if (prune && topK.isFull()) {
+                // Опорный курсор: первый, на котором сумма наибольших рангов списков может войти в выдачу
+                double bound = 0;
+                pivot = -1;
+                for (int i = 0; i < live; i++) {
+                    bound += cursors[i].list.maxRank();
+                    if (!cannotEnter(bound, topK, count)) {
+                        pivot = i;
+                        break;
+                    }
+                }
+                if (pivot < 0) {
+                    return false; // Ни одна из оставшихся страниц не войдёт в выдачу
+                }
+            }
+            int pivotDoc = cursors[pivot].doc;
+            int group = pivot + 1;
+            while (group < live && cursors[group].doc == pivotDoc) {
+                group++;
+            }
+
+            if (prune && topK.isFull()) {
+                // Уточнение по блокам: курсоры группы не дают странице войти - пропускаем блоки
+                double bound = 0;
+                int target = group < live ? cursors[group].doc : Integer.MAX_VALUE;
+                for (int i = 0; i < group; i++) {
+                    int block = cursors[i].blockOf(pivotDoc);
+                    if (block >= 0) {
+                        bound += cursors[i].list.blockMaxRank(block);
+                        target = Math.min(target, cursors[i].list.blockLastDoc(block) + 1);
+                    }
+                }
+                if (cannotEnter(bound, topK, count)) {
+                    exact = false;
+                    target = Math.max(target, pivotDoc + 1);
+                    live = advanceGroup(cursors, live, group, target);
+                    continue;
+                }
+            }
+
+            if (cursors[0].doc == pivotDoc) {
+                // Все курсоры до опорного стоят на странице: считаем её релевантность в порядке списков
+                Arrays.fill(ranks, 0);
+                for (int i = 0; i < group; i++) {
+                    ranks[cursors[i].index] = cursors[i].iterator.rank();
+                }
+                float score = 0;
+                for (float rank : ranks) {
+                    score += rank;
+                }
+                topK.collect(pivotDoc, score);
+                live = advanceGroup(cursors, live, group, pivotDoc + 1);
+            } else {
+                // Курсоры до опорного догоняют его: страницы между ними не войдут в выдачу
+                if (prune) {
+                    exact = false;
+                }
+                live = advanceGroup(cursors, live, pivot, pivotDoc);
+            }
+        }
+        return exact;
+    }
+
+    // Курсоры [0, group) переходят к target; закончившиеся удаляются. Возвращает число оставшихся
+    private static int advanceGroup(Cursor[] cursors, int live, int group, int target) {
+        for (int i = 0; i < group; i++) {
+            if (cursors[i].doc < target) {
+                cursors[i].advance(target);
+            }
+        }
+        int kept = 0;
+        for (int i = 0; i < live; i++) {
+            if (cursors[i].doc != PostingCursor.NO_MORE_DOCS) {
+                cursors[kept++] = cursors[i];
+            }
+        }
+        return kept;
+    }
+
+    private static void sortByDoc(Cursor[] cursors, int live) {
+        for (int i = 1; i < live; i++) {
+            Cursor cursor = cursors[i];
+            int j = i - 1;
+            while (j >= 0 && cursors[j].doc > cursor.doc) {
+                cursors[j + 1] = cursors[j];
+                j--;
+            }
+            cursors[j + 1] = cursor;
+        }
+    }
+
+    // Граница строго ниже порога (с запасом на округление суммы float), страница в выдачу не войдёт
+    private static boolean cannotEnter(double bound, TopKCollector topK, int terms) {
+        float threshold = topK.threshold();
+        return bound < threshold - Math.ulp(threshold) * terms;
+    }
+
+    private static final class Cursor {
+        private final int index;
+        private final PostingList list;
+        private final PostingList.Iterator iterator;
+        private int doc = -1;
+        private int block = -1;
+
+        private Cursor(int index, PostingList list) {
+            this.index = index;
+            this.list = list;
+            this.iterator = list.iterator();
+        }
+
+        private int next() {
+            return doc = iterator.nextDoc();
+        }
+
+        // Блок списка для target; последний найденный блок запоминается, поиск нужен только при переходе
+        private int blockOf(int target) {
+            if (block < 0 || target > list.blockLastDoc(block) || (block > 0 && target <= list.blockLastDoc(block - 1))) {
+                block = list.blockOf(target);
+            }
+            return block;
+        }
+
+        private void advance(int target) {
+            doc = target == Integer.MAX_VALUE ? PostingCursor.NO_MORE_DOCS : iterator.advance(target);
+        }
+    }
+}
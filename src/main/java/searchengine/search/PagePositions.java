@@ -0,0 +1,126 @@
+package searchengine.search;
+
+import searchengine.utils.VarIntReader;
+import searchengine.utils.VarIntWriter;
+
+import java.util.*;
+
+/**
+ * Позиционный индекс страницы: для каждого термина порядковые номера слов и
+ * границы слов в чистом тексте страницы (смещения символов).
+ * Формат: число терминов, затем по каждому термину в порядке возрастания id -
+ * разность id, длина блока в байтах и блок: число вхождений и тройки
+ * (разность позиции, разность начала слова, длина слова) в varint.
+ * Длина блока позволяет пропускать ненужные запросу термины без разбора
+ */
+public final class PagePositions {
+
+    private PagePositions() {
+    }
+
+    /** Вхождения термина на странице, по возрастанию позиции */
+    public record TermPositions(int[] positions, int[] starts, int[] ends) {
+        public int size() {
+            return positions.length;
+        }
+    }
+
+    /** Накопление вхождений при разборе текста страницы */
+    public static class Builder {
+        private final Map<String, Occurrences> byLemma = new HashMap<>();
+
+        public void add(String lemma, int position, int start, int end) {
+            byLemma.computeIfAbsent(lemma, k -> new Occurrences()).add(position, start, end);
+        }
+
+        public boolean isEmpty() {
+            return byLemma.isEmpty();
+        }
+
+        /** Закодировать вхождения, леммы переводятся в id словаря */
+        public byte[] encode(Map<String, Integer> termIds) {
+            TreeMap<Integer, Occurrences> byTerm = new TreeMap<>();
+            byLemma.forEach((lemma, occurrences) -> {
+                Integer termId = termIds.get(lemma);
+                if (termId != null) {
+                    byTerm.put(termId, occurrences);
+                }
+            });
+
+            VarIntWriter out = new VarIntWriter(byTerm.size() * 8);
+            VarIntWriter block = new VarIntWriter();
+            out.writeVarInt(byTerm.size());
+            int previousTermId = 0;
+            for (Map.Entry<Integer, Occurrences> entry : byTerm.entrySet()) {
+                block.reset();
+                entry.getValue().encode(block);
+                out.writeVarInt(entry.getKey() - previousTermId);
+                out.writeVarInt(block.length());
+                out.writeBytes(block);
+                previousTermId = entry.getKey();
+            }
+            return out.toByteArray();
+        }
+    }
+
+    /** Раскодировать вхождения только указанных терминов */
+    public static Map<Integer, TermPositions> decode(byte[] data, Set<Integer> termIds) {
+        Map<Integer, TermPositions> result = new HashMap<>(termIds.size() * 2);
+        if (data == null || data.length == 0) {
+            return result;
+        }
+        VarIntReader in = new VarIntReader(data);
+        int termCount = in.readVarInt();
+        int termId = 0;
+        for (int t = 0; t < termCount && result.size() < termIds.size(); t++) {
+            termId += in.readVarInt();
+            int blockLength = in.readVarInt();
+            if (!termIds.contains(termId)) {
+                in.skip(blockLength);
+                continue;
+            }
+            int count = in.readVarInt();
+            int[] positions = new int[count];
+            int[] starts = new int[count];
+            int[] ends = new int[count];
+            int position = 0;
+            int start = 0;
+            for (int i = 0; i < count; i++) {
+                position += in.readVarInt();
+                start += in.readVarInt();
+                positions[i] = position;
+                starts[i] = start;
+                ends[i] = start + in.readVarInt();
+            }
+            result.put(termId, new TermPositions(positions, starts, ends));
+        }
+        return result;
+    }
+
+    private static class Occurrences {
+        private int[] data = new int[12]; // тройки (позиция, начало, конец)
+        private int size;
+
+        private void add(int position, int start, int end) {
+            if (size + 3 > data.length) {
+                data = Arrays.copyOf(data, data.length * 2);
+            }
+            data[size++] = position;
+            data[size++] = start;
+            data[size++] = end;
+        }
+
+        private void encode(VarIntWriter out) {
+            out.writeVarInt(size / 3);
+            int previousPosition = 0;
+            int previousStart = 0;
+            for (int i = 0; i < size; i += 3) {
+                out.writeVarInt(data[i] - previousPosition);
+                out.writeVarInt(data[i + 1] - previousStart);
+                out.writeVarInt(data[i + 2] - data[i + 1]);
+                previousPosition = data[i];
+                previousStart = data[i + 1];
+            }
+        }
+    }
+}
@@ -0,0 +1,111 @@
+package searchengine.search;
+
+import searchengine.search.PagePositions.TermPositions;
+
+import java.util.*;
+
+/**
+ * Проверка фраз и близости слов по позиционному индексу страницы
+ */
+public final class PositionalMatcher {
+
+    private PositionalMatcher() {
+    }
+
+    /** Слова фразы запроса: id терминов и их позиции внутри фразы */
+    public record Phrase(int[] termIds, int[] offsets, int slop) {
+    }
+
+    /**
+     * Встречается ли фраза на странице. При slop = 0 слова должны идти подряд в том же порядке,
+     * иначе все слова должны уместиться в окне длиной фразы плюс slop в любом порядке
+     */
+    public static boolean matches(Map<Integer, TermPositions> positions, Phrase phrase) {
+        int n = phrase.termIds().length;
+        if (n == 0) {
+            return true;
+        }
+        TermPositions[] terms = new TermPositions[n];
+        int rarest = 0;
+        for (int i = 0; i < n; i++) {
+            terms[i] = positions.get(phrase.termIds()[i]);
+            if (terms[i] == null) {
+                return false;
+            }
+            if (terms[i].size() < terms[rarest].size()) {
+                rarest = i;
+            }
+        }
+
+        if (phrase.slop() > 0) {
+            int span = phrase.offsets()[n - 1] - phrase.offsets()[0] + phrase.slop();
+            return withinWindow(positions, phrase.termIds(), span);
+        }
+
+        // Перебираем вхождения самого редкого слова и проверяем остальные двоичным поиском
+        for (int anchor : terms[rarest].positions()) {
+            boolean all = true;
+            for (int i = 0; i < n && all; i++) {
+                if (i == rarest) continue;
+                int expected = anchor + phrase.offsets()[i] - phrase.offsets()[rarest];
+                all = Arrays.binarySearch(terms[i].positions(), expected) >= 0;
+            }
+            if (all) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Скользящее окно по слитым позициям всех слов: фраза найдена, если в окне
+     * от первой до последней позиции не длиннее span есть каждое слово
+     * (повторяющееся в запросе слово - столько раз, сколько оно повторяется)
+     */
+    private static boolean withinWindow(Map<Integer, TermPositions> positions, int[] termIds, int span) {
+        Map<Integer, Integer> slots = new LinkedHashMap<>();
+        for (int termId : termIds) {
+            slots.putIfAbsent(termId, slots.size());
+        }
+        int[] required = new int[slots.size()];
+        int total = 0;
+        for (Map.Entry<Integer, Integer> slot : slots.entrySet()) {
+            for (int termId : termIds) {
+                if (termId == slot.getKey()) {
+                    required[slot.getValue()]++;
+                }
+            }
+            total += positions.get(slot.getKey()).size();
+        }
+
+        // Позиция в старших 32 битах, номер слова - в младших: сортировка даёт слияние по позиции
+        long[] merged = new long[total];
+        int size = 0;
+        for (Map.Entry<Integer, Integer> slot : slots.entrySet()) {
+            for (int position : positions.get(slot.getKey()).positions()) {
+                merged[size++] = ((long) position << 32) | slot.getValue();
+            }
+        }
+        Arrays.sort(merged);
+
+        int[] inWindow = new int[required.length];
+        int satisfied = 0;
+        int left = 0;
+        for (int right = 0; right < size; right++) {
+            int slot = (int) merged[right];
+            if (++inWindow[slot] == required[slot]) {
+                satisfied++;
+            }
+            while (satisfied == required.length) {
+                if ((merged[right] >>> 32) - (merged[left] >>> 32) <= span) {
+                    return true;
+                }
+                int leftSlot = (int) merged[left++];
+                if (inWindow[leftSlot]-- == required[leftSlot]) {
+                    satisfied--;
+                }
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,21 @@
+package searchengine.search;
+
+/**
+ * Курсор по списку страниц термина, отсортированному по возрастанию id.
+ * Общий интерфейс для сжатых списков в памяти и списков, прочитанных из БД
+ */
+public interface PostingCursor {
+    int NO_MORE_DOCS = Integer.MAX_VALUE;
+
+    /** Следующий id страницы или NO_MORE_DOCS */
+    int nextDoc();
+
+    /** Первый id страницы не меньше target или NO_MORE_DOCS */
+    int advance(int target);
+
+    /** Ранг термина на текущей странице */
+    float rank();
+
+    /** Длина списка: пересечение начинается с самого короткого */
+    int cost();
+}
@@ -0,0 +1,64 @@
+package searchengine.search;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Пересечение списков страниц терминов с накоплением суммы рангов.
+ * Ведущим берётся самый короткий список, остальные курсоры только догоняют его
+ * переходом advance, поэтому стоимость пропорциональна длине самого короткого списка
+ */
+public final class PostingIntersection {
+
+    private PostingIntersection() {
+    }
+
+    /** Страницы, содержащие все термины, по возрастанию id, и суммы рангов */
+    public record Matches(int[] pageIds, float[] scores) {
+        public int size() {
+            return pageIds.length;
+        }
+    }
+
+    public static Matches intersect(List<? extends PostingCursor> cursors) {
+        if (cursors.isEmpty()) {
+            return new Matches(new int[0], new float[0]);
+        }
+        List<PostingCursor> ordered = new ArrayList<>(cursors);
+        ordered.sort(Comparator.comparingInt(PostingCursor::cost));
+        PostingCursor lead = ordered.get(0);
+        PostingCursor[] others = ordered.subList(1, ordered.size()).toArray(new PostingCursor[0]);
+
+        int capacity = Math.min(lead.cost(), 1024);
+        int[] pageIds = new int[Math.max(capacity, 1)];
+        float[] scores = new float[pageIds.length];
+        int count = 0;
+
+        int doc = lead.nextDoc();
+        while (doc != PostingCursor.NO_MORE_DOCS) {
+            int next = doc;
+            for (int i = 0; i < others.length && next == doc; i++) {
+                next = others[i].advance(doc);
+            }
+            if (next != doc) {
+                // Один из списков ушёл дальше: ведущий догоняет его
+                doc = lead.advance(next);
+                continue;
+            }
+            float score = lead.rank();
+            for (PostingCursor other : others) {
+                score += other.rank();
+            }
+            if (count == pageIds.length) {
+                pageIds = Arrays.copyOf(pageIds, count * 2);
+                scores = Arrays.copyOf(scores, count * 2);
+            }
+            pageIds[count] = doc;
+            scores[count++] = score;
+            doc = lead.nextDoc();
+        }
+        return new Matches(Arrays.copyOf(pageIds, count), Arrays.copyOf(scores, count));
+    }
+}
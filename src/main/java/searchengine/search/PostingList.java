@@ -0,0 +1,186 @@
+package searchengine.search;
+
+import searchengine.utils.VarIntReader;
+import searchengine.utils.VarIntWriter;
+
+import java.util.Arrays;
+
+/**
+ * Сжатый список страниц термина (posting list) с рангами.
+ * id страниц отсортированы и хранятся разностями в varint блоками по 128;
+ * для каждого блока запоминаются последний id и смещение в байтах (данные пропуска),
+ * поэтому переход к нужному id не требует распаковки предыдущих блоков.
+ * Ранги лежат параллельным массивом float, для каждого блока хранится наибольший ранг
+ * (верхняя граница для отсечения блоков при отборе лучших страниц). Список неизменяем
+ */
+public final class PostingList {
+    public static final int BLOCK_SIZE = 128;
+
+    private final int size;
+    private final byte[] data;
+    private final int[] blockLastDoc;
+    private final int[] blockOffset;
+    private final float[] ranks;
+    private final float[] blockMaxRank;
+    private final float maxRank;
+
+    private PostingList(int size, byte[] data, int[] blockLastDoc, int[] blockOffset, float[] ranks) {
+        this.size = size;
+        this.data = data;
+        this.blockLastDoc = blockLastDoc;
+        this.blockOffset = blockOffset;
+        this.ranks = ranks;
+        this.blockMaxRank = new float[blockLastDoc.length];
+        float max = 0;
+        for (int i = 0; i < size; i++) {
+            blockMaxRank[i / BLOCK_SIZE] = Math.max(blockMaxRank[i / BLOCK_SIZE], ranks[i]);
+            max = Math.max(max, ranks[i]);
+        }
+        this.maxRank = max;
+    }
+
+    /** Построить список из id страниц (по возрастанию, без повторов) и их рангов */
+    public static PostingList of(int[] pageIds, float[] ranks, int size) {
+        int blocks = (size + BLOCK_SIZE - 1) / BLOCK_SIZE;
+        int[] blockLastDoc = new int[blocks];
+        int[] blockOffset = new int[blocks];
+        VarIntWriter out = new VarIntWriter(size * 2);
+        int previous = 0;
+        for (int i = 0; i < size; i++) {
+            if (i % BLOCK_SIZE == 0) {
+                blockOffset[i / BLOCK_SIZE] = out.length();
+            }
+            out.writeVarInt(pageIds[i] - previous);
+            previous = pageIds[i];
+            if (i % BLOCK_SIZE == BLOCK_SIZE - 1 || i == size - 1) {
+                blockLastDoc[i / BLOCK_SIZE] = pageIds[i];
+            }
+        }
+        return new PostingList(size, out.toByteArray(), blockLastDoc, blockOffset, Arrays.copyOf(ranks, size));
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /** Наибольший ранг в списке (верхняя граница вклада термина в релевантность) */
+    public float maxRank() {
+        return maxRank;
+    }
+
+    /** Блок, содержащий первый id не меньше target, или -1, если таких id нет. Блоки не распаковываются */
+    public int blockOf(int target) {
+        int found = Arrays.binarySearch(blockLastDoc, target);
+        int block = found >= 0 ? found : -found - 1;
+        return block < blockLastDoc.length ? block : -1;
+    }
+
+    public int blockLastDoc(int block) {
+        return blockLastDoc[block];
+    }
+
+    public float blockMaxRank(int block) {
+        return blockMaxRank[block];
+    }
+
+    /** Примерный объём в памяти, байт */
+    public long sizeInBytes() {
+        return data.length + (blockLastDoc.length * 3L + ranks.length) * 4L + 64;
+    }
+
+    /** Все id страниц списка */
+    public int[] toArray() {
+        int[] result = new int[size];
+        Iterator iterator = iterator();
+        for (int i = 0; i < size; i++) {
+            result[i] = iterator.nextDoc();
+        }
+        return result;
+    }
+
+    public Iterator iterator() {
+        return new Iterator();
+    }
+
+    /** Курсор по списку. Не потокобезопасен, у каждого запроса свой */
+    public final class Iterator implements PostingCursor {
+        private final int[] buffer = new int[BLOCK_SIZE];
+        private int block = -1;
+        private int blockLength;
+        private int indexInBlock;
+        private int doc = -1;
+
+        @Override
+        public int nextDoc() {
+            if (doc == NO_MORE_DOCS) {
+                return doc;
+            }
+            if (block < 0 || ++indexInBlock >= blockLength) {
+                if (block + 1 >= blockLastDoc.length) {
+                    return doc = NO_MORE_DOCS;
+                }
+                decodeBlock(block + 1);
+                indexInBlock = 0;
+            }
+            return doc = buffer[indexInBlock];
+        }
+
+        /** Блоки с меньшими id пропускаются по данным пропуска, не распаковываясь */
+        @Override
+        public int advance(int target) {
+            if (doc >= target) {
+                return doc;
+            }
+            int targetBlock = Math.max(block, 0);
+            if (block < 0 || blockLastDoc[block] < target) {
+                // Экспоненциальный, затем двоичный поиск по последним id блоков
+                int low = targetBlock;
+                int step = 1;
+                int high = low;
+                while (high < blockLastDoc.length && blockLastDoc[high] < target) {
+                    low = high + 1;
+                    high += step;
+                    step <<= 1;
+                }
+                high = Math.min(high, blockLastDoc.length - 1);
+                int found = low <= high ? Arrays.binarySearch(blockLastDoc, low, high + 1, target) : -low - 1;
+                targetBlock = found >= 0 ? found : -found - 1;
+                if (targetBlock >= blockLastDoc.length) {
+                    return doc = NO_MORE_DOCS;
+                }
+                decodeBlock(targetBlock);
+                indexInBlock = 0;
+            }
+            while (buffer[indexInBlock] < target) {
+                indexInBlock++;
+            }
+            return doc = buffer[indexInBlock];
+        }
+
+        public int docId() {
+            return doc;
+        }
+
+        @Override
+        public float rank() {
+            return ranks[block * BLOCK_SIZE + indexInBlock];
+        }
+
+        @Override
+        public int cost() {
+            return size;
+        }
+
+        private void decodeBlock(int newBlock) {
+            block = newBlock;
+            blockLength = Math.min(BLOCK_SIZE, size - newBlock * BLOCK_SIZE);
+            int end = newBlock + 1 < blockOffset.length ? blockOffset[newBlock + 1] : data.length;
+            VarIntReader in = new VarIntReader(data, blockOffset[newBlock], end - blockOffset[newBlock]);
+            int previous = newBlock > 0 ? blockLastDoc[newBlock - 1] : 0;
+            for (int i = 0; i < blockLength; i++) {
+                previous += in.readVarInt();
+                buffer[i] = previous;
+            }
+        }
+    }
+}
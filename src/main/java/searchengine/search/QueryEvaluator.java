@@ -0,0 +1,262 @@
+package searchengine.search;
+
+import searchengine.search.PostingIntersection.Matches;
+import searchengine.search.QueryNode.And;
+import searchengine.search.QueryNode.Or;
+import searchengine.search.QueryNode.Term;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Вычисление дерева запроса над списками страниц одного сайта.
+ * Узлы компилируются в курсоры И/ИЛИ/НЕ; у И ведущим становится самый
+ * короткий по оценке потомок (ИЛИ оценивается суммой, И - минимумом),
+ * исключения проверяются переходом advance только на страницах-кандидатах,
+ * поэтому стоимость определяется самым редким обязательным словом
+ */
+public final class QueryEvaluator {
+    // Часть запроса не участвует в отборе (стоп-лемма или слишком частое слово)
+    private static final PostingCursor IGNORED = new SortedArrayCursor(new int[0], new float[0], 0);
+
+    private QueryEvaluator() {
+    }
+
+    /** Списки страниц слов на сайте */
+    public interface TermSource {
+        /** Курсор по страницам слова или null, если слова на сайте нет */
+        PostingCursor postings(String lemma);
+
+        /** Слово есть на сайте, но не участвует в отборе (стоп-лемма, слишком частое) */
+        boolean ignored(String lemma);
+    }
+
+    /** Страницы сайта, подходящие под запрос, по возрастанию id и суммы рангов слов */
+    public static Matches evaluate(QueryNode root, TermSource terms) {
+        PostingCursor cursor = compile(root, terms);
+        if (cursor == null || cursor == IGNORED) {
+            return new Matches(new int[0], new float[0]);
+        }
+        int[] pageIds = new int[Math.max(Math.min(cursor.cost(), 1024), 1)];
+        float[] scores = new float[pageIds.length];
+        int count = 0;
+        for (int doc = cursor.nextDoc(); doc != PostingCursor.NO_MORE_DOCS; doc = cursor.nextDoc()) {
+            if (count == pageIds.length) {
+                pageIds = Arrays.copyOf(pageIds, count * 2);
+                scores = Arrays.copyOf(scores, count * 2);
+            }
+            pageIds[count] = doc;
+            scores[count++] = cursor.rank();
+        }
+        return new Matches(Arrays.copyOf(pageIds, count), Arrays.copyOf(scores, count));
+    }
+
+    // null - страниц нет, IGNORED - узел не ограничивает выдачу
+    private static PostingCursor compile(QueryNode node, TermSource terms) {
+        if (node instanceof Term term) {
+            return terms.ignored(term.lemma()) ? IGNORED : terms.postings(term.lemma());
+        }
+        if (node instanceof Or or) {
+            List<PostingCursor> alternatives = new ArrayList<>();
+            for (QueryNode child : or.children()) {
+                PostingCursor cursor = compile(child, terms);
+                if (cursor == IGNORED) {
+                    return IGNORED;
+                }
+                if (cursor != null) {
+                    alternatives.add(cursor);
+                }
+            }
+            return union(alternatives);
+        }
+        And and = (And) node;
+        List<PostingCursor> required = new ArrayList<>();
+        for (QueryNode child : and.children()) {
+            PostingCursor cursor = compile(child, terms);
+            if (cursor == null) {
+                return null;
+            }
+            if (cursor != IGNORED) {
+                required.add(cursor);
+            }
+        }
+        if (required.isEmpty()) {
+            return IGNORED;
+        }
+        PostingCursor include = required.size() == 1 ? required.get(0) : new Conjunction(required);
+
+        List<PostingCursor> excluded = new ArrayList<>();
+        for (QueryNode child : and.excluded()) {
+            PostingCursor cursor = compile(child, terms);
+            if (cursor != null && cursor != IGNORED) {
+                excluded.add(cursor);
+            }
+        }
+        return excluded.isEmpty() ? include : new Exclusion(include, union(excluded));
+    }
+
+    private static PostingCursor union(List<PostingCursor> cursors) {
+        if (cursors.isEmpty()) {
+            return null;
+        }
+        return cursors.size() == 1 ? cursors.get(0) : new Disjunction(cursors);
+    }
+
+    // Страницы всех потомков: ведущий - самый дешёвый, остальные догоняют его
+    private static final class Conjunction implements PostingCursor {
+        private final PostingCursor lead;
+        private final PostingCursor[] others;
+
+        private Conjunction(List<PostingCursor> cursors) {
+            List<PostingCursor> ordered = new ArrayList<>(cursors);
+            ordered.sort(Comparator.comparingInt(PostingCursor::cost));
+            lead = ordered.get(0);
+            others = ordered.subList(1, ordered.size()).toArray(new PostingCursor[0]);
+        }
+
+        @Override
+        public int nextDoc() {
+            return align(lead.nextDoc());
+        }
+
+        @Override
+        public int advance(int target) {
+            return align(lead.advance(target));
+        }
+
+        private int align(int doc) {
+            while (doc != NO_MORE_DOCS) {
+                int next = doc;
+                for (int i = 0; i < others.length && next == doc; i++) {
+                    next = others[i].advance(doc);
+                }
+                if (next == doc) {
+                    return doc;
+                }
+                doc = lead.advance(next);
+            }
+            return doc;
+        }
+
+        @Override
+        public float rank() {
+            float rank = lead.rank();
+            for (PostingCursor other : others) {
+                rank += other.rank();
+            }
+            return rank;
+        }
+
+        @Override
+        public int cost() {
+            return lead.cost();
+        }
+    }
+
+    // Страницы любого из потомков; ранг - сумма рангов потомков, стоящих на странице
+    private static final class Disjunction implements PostingCursor {
+        private final PostingCursor[] cursors;
+        private final int[] docs;
+        private int doc = -1;
+
+        private Disjunction(List<PostingCursor> cursors) {
+            this.cursors = cursors.toArray(new PostingCursor[0]);
+            this.docs = new int[this.cursors.length];
+            Arrays.fill(docs, -1);
+        }
+
+        @Override
+        public int nextDoc() {
+            if (doc == NO_MORE_DOCS) {
+                return doc;
+            }
+            for (int i = 0; i < cursors.length; i++) {
+                if (docs[i] == doc) {
+                    docs[i] = cursors[i].nextDoc();
+                }
+            }
+            return doc = min();
+        }
+
+        @Override
+        public int advance(int target) {
+            if (doc >= target) {
+                return doc;
+            }
+            for (int i = 0; i < cursors.length; i++) {
+                if (docs[i] < target) {
+                    docs[i] = cursors[i].advance(target);
+                }
+            }
+            return doc = min();
+        }
+
+        private int min() {
+            int min = NO_MORE_DOCS;
+            for (int value : docs) {
+                min = Math.min(min, value);
+            }
+            return min;
+        }
+
+        @Override
+        public float rank() {
+            float rank = 0;
+            for (int i = 0; i < cursors.length; i++) {
+                if (docs[i] == doc) {
+                    rank += cursors[i].rank();
+                }
+            }
+            return rank;
+        }
+
+        @Override
+        public int cost() {
+            long cost = 0;
+            for (PostingCursor cursor : cursors) {
+                cost += cursor.cost();
+            }
+            return (int) Math.min(cost, Integer.MAX_VALUE);
+        }
+    }
+
+    // Страницы include без страниц exclude; exclude проверяется только на кандидатах
+    private static final class Exclusion implements PostingCursor {
+        private final PostingCursor include;
+        private final PostingCursor exclude;
+
+        private Exclusion(PostingCursor include, PostingCursor exclude) {
+            this.include = include;
+            this.exclude = exclude;
+        }
+
+        @Override
+        public int nextDoc() {
+            return skipExcluded(include.nextDoc());
+        }
+
+        @Override
+        public int advance(int target) {
+            return skipExcluded(include.advance(target));
+        }
+
+        private int skipExcluded(int doc) {
+            while (doc != NO_MORE_DOCS && exclude.advance(doc) == doc) {
+                doc = include.nextDoc();
+            }
+            return doc;
+        }
+
+        @Override
+        public float rank() {
+            return include.rank();
+        }
+
+        @Override
+        public int cost() {
+            return include.cost();
+        }
+    }
+}
@@ -0,0 +1,29 @@
+package searchengine.search;
+
+import java.util.List;
+
+/**
+ * Дерево булева запроса: слова, И, ИЛИ и исключения.
+ * Корень - всегда {@link And}: обязательные части запроса и исключённые слова
+ */
+public sealed interface QueryNode {
+
+    /** Слово запроса (лемма) */
+    record Term(String lemma) implements QueryNode {
+    }
+
+    /** Все части обязательны; страницы, совпавшие с любой из excluded, отбрасываются */
+    record And(List<QueryNode> children, List<QueryNode> excluded) implements QueryNode {
+        public And {
+            children = List.copyOf(children);
+            excluded = List.copyOf(excluded);
+        }
+    }
+
+    /** Достаточно любой из частей */
+    record Or(List<QueryNode> children) implements QueryNode {
+        public Or {
+            children = List.copyOf(children);
+        }
+    }
+}
@@ -0,0 +1,106 @@
+package searchengine.search;
+
+import searchengine.utils.VarIntReader;
+import searchengine.utils.VarIntWriter;
+
+import java.util.Arrays;
+
+/**
+ * Границы предложений чистого текста страницы: смещения начал предложений.
+ * Вычисляются один раз при индексации и хранятся разностями в varint,
+ * поэтому сниппет выбирается по предложениям без разбора всего текста.
+ * Слишком длинные предложения (текст без знаков препинания) делятся по пробелу
+ */
+public final class SentenceBoundaries {
+    public static final int MAX_SENTENCE_LENGTH = 200;
+
+    private SentenceBoundaries() {
+    }
+
+    /** Начала предложений по возрастанию; первое всегда 0 (для непустого текста) */
+    public static int[] split(CharSequence text) {
+        int length = text.length();
+        if (length == 0) {
+            return new int[0];
+        }
+        int[] starts = new int[Math.max(4, length / 80)];
+        int count = 0;
+        starts[count++] = 0;
+        int sentenceStart = 0;
+        for (int i = 0; i < length; i++) {
+            char c = text.charAt(i);
+            int next = -1;
+            if (c == '.' || c == '!' || c == '?' || c == '…') {
+                next = afterTerminator(text, i + 1);
+            } else if (Character.isWhitespace(c) && i - sentenceStart >= MAX_SENTENCE_LENGTH) {
+                next = skipSpaces(text, i);
+            }
+            if (next > sentenceStart && next < length) {
+                if (count == starts.length) {
+                    starts = Arrays.copyOf(starts, count * 2);
+                }
+                starts[count++] = next;
+                sentenceStart = next;
+                i = next - 1;
+            }
+        }
+        return Arrays.copyOf(starts, count);
+    }
+
+    /** Номер предложения, содержащего символ offset */
+    public static int sentenceOf(int[] starts, int offset) {
+        int index = Arrays.binarySearch(starts, offset);
+        return index >= 0 ? index : -index - 2;
+    }
+
+    public static byte[] encode(int[] starts) {
+        VarIntWriter out = new VarIntWriter(starts.length * 2 + 1);
+        out.writeVarInt(starts.length);
+        int previous = 0;
+        for (int start : starts) {
+            out.writeVarInt(start - previous);
+            previous = start;
+        }
+        return out.toByteArray();
+    }
+
+    public static int[] decode(byte[] data) {
+        if (data == null || data.length == 0) {
+            return new int[0];
+        }
+        VarIntReader in = new VarIntReader(data);
+        int[] starts = new int[in.readVarInt()];
+        int previous = 0;
+        for (int i = 0; i < starts.length; i++) {
+            previous += in.readVarInt();
+            starts[i] = previous;
+        }
+        return starts;
+    }
+
+    // Начало следующего предложения после знака конца или -1: после знака (и закрывающих кавычек)
+    // нужен пробел, затем заглавная буква, цифра или открывающая кавычка. Сокращения вида «т. е.» не делятся
+    private static int afterTerminator(CharSequence text, int from) {
+        int i = from;
+        while (i < text.length() && "\"»)”'.!?…".indexOf(text.charAt(i)) >= 0) {
+            i++;
+        }
+        if (i >= text.length() || !Character.isWhitespace(text.charAt(i))) {
+            return -1;
+        }
+        i = skipSpaces(text, i);
+        if (i >= text.length()) {
+            return -1;
+        }
+        char first = text.charAt(i);
+        return Character.isUpperCase(first) || Character.isDigit(first) || "\"«“—-(".indexOf(first) >= 0 ? i : -1;
+    }
+
+    private static int skipSpaces(CharSequence text, int from) {
+        int i = from;
+        while (i < text.length() && Character.isWhitespace(text.charAt(i))) {
+            i++;
+        }
+        return i;
+    }
+}
@@ -0,0 +1,148 @@
+package searchengine.search;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Инвертированный индекс одного поколения сайта в памяти:
+ * id термина -> частота, признак стоп-леммы и сжатый список страниц с рангами.
+ * Неизменяем, поэтому читается поиском без блокировок и заменяется целиком
+ */
+public final class SiteIndex {
+    private final int siteId;
+    private final int generation;
+    private final int totalPages;
+    private final Map<Integer, TermInfo> terms;
+    private final long sizeInBytes;
+
+    /** Статистика термина на сайте; у стоп-лемм список страниц пуст */
+    public record TermInfo(int frequency, boolean stopLemma, PostingList postings) {
+    }
+
+    private SiteIndex(int siteId, int generation, int totalPages, Map<Integer, TermInfo> terms) {
+        this.siteId = siteId;
+        this.generation = generation;
+        this.totalPages = totalPages;
+        this.terms = terms;
+        long size = 0;
+        for (TermInfo term : terms.values()) {
+            size += term.postings().sizeInBytes() + 48;
+        }
+        this.sizeInBytes = size;
+    }
+
+    public int siteId() {
+        return siteId;
+    }
+
+    public int generation() {
+        return generation;
+    }
+
+    public int totalPages() {
+        return totalPages;
+    }
+
+    /** Термин сайта или null, если на сайте его нет */
+    public TermInfo term(int termId) {
+        return terms.get(termId);
+    }
+
+    public int termCount() {
+        return terms.size();
+    }
+
+    /** Примерный объём индекса в памяти, байт */
+    public long sizeInBytes() {
+        return sizeInBytes;
+    }
+
+    public static Builder builder(int siteId, int generation, int totalPages) {
+        return new Builder(siteId, generation, totalPages);
+    }
+
+    /** Сборка индекса; записи страниц могут добавляться в любом порядке */
+    public static final class Builder {
+        private final int siteId;
+        private final int generation;
+        private final int totalPages;
+        private final Map<Integer, TermBuilder> terms = new HashMap<>();
+
+        private Builder(int siteId, int generation, int totalPages) {
+            this.siteId = siteId;
+            this.generation = generation;
+            this.totalPages = totalPages;
+        }
+
+        public Builder term(int termId, int frequency, boolean stopLemma) {
+            TermBuilder term = terms.computeIfAbsent(termId, id -> new TermBuilder());
+            term.frequency = frequency;
+            term.stopLemma = stopLemma;
+            return this;
+        }
+
+        public Builder addPosting(int termId, int pageId, float rank) {
+            terms.computeIfAbsent(termId, id -> new TermBuilder()).add(pageId, rank);
+            return this;
+        }
+
+        public SiteIndex build() {
+            Map<Integer, TermInfo> built = new HashMap<>(terms.size() * 2);
+            terms.forEach((termId, term) -> built.put(termId,
+                    new TermInfo(term.frequency, term.stopLemma, term.toPostingList())));
+            return new SiteIndex(siteId, generation, totalPages, built);
+        }
+    }
+
+    private static final class TermBuilder {
+        private int frequency;
+        private boolean stopLemma;
+        private int[] pageIds = new int[4];
+        private float[] ranks = new float[4];
+        private int size;
+        private boolean sorted = true;
+
+        private void add(int pageId, float rank) {
+            if (size == pageIds.length) {
+                pageIds = Arrays.copyOf(pageIds, size * 2);
+                ranks = Arrays.copyOf(ranks, size * 2);
+            }
+            if (size > 0 && pageIds[size - 1] >= pageId) {
+                sorted = false;
+            }
+            pageIds[size] = pageId;
+            ranks[size++] = rank;
+        }
+
+        private PostingList toPostingList() {
+            if (!sorted) {
+                sortByPage();
+            }
+            return PostingList.of(pageIds, ranks, size);
+        }
+
+        // Сортировка пар (страница, ранг) по id страницы через упакованные long
+        private void sortByPage() {
+            long[] packed = new long[size];
+            for (int i = 0; i < size; i++) {
+                packed[i] = ((long) pageIds[i] << 32) | i;
+            }
+            Arrays.sort(packed);
+            int[] sortedIds = new int[size];
+            float[] sortedRanks = new float[size];
+            int count = 0;
+            for (long entry : packed) {
+                int pageId = (int) (entry >>> 32);
+                if (count > 0 && sortedIds[count - 1] == pageId) {
+                    continue; // Повторная запись той же страницы
+                }
+                sortedIds[count] = pageId;
+                sortedRanks[count++] = ranks[(int) entry];
+            }
+            pageIds = sortedIds;
+            ranks = sortedRanks;
+            size = count;
+        }
+    }
+}
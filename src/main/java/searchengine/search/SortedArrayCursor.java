@@ -0,0 +1,69 @@
+package searchengine.search;
+
+/**
+ * Курсор по несжатому отсортированному массиву id страниц с параллельными рангами.
+ * Переход к id выполняется экспоненциальным (galloping), затем двоичным поиском,
+ * поэтому пропуск длинного участка стоит O(log расстояния)
+ */
+public final class SortedArrayCursor implements PostingCursor {
+    private final int[] pageIds;
+    private final float[] ranks;
+    private final int size;
+    private int index = -1;
+
+    public SortedArrayCursor(int[] pageIds, float[] ranks, int size) {
+        this.pageIds = pageIds;
+        this.ranks = ranks;
+        this.size = size;
+    }
+
+    @Override
+    public int nextDoc() {
+        if (index < size) {
+            index++;
+        }
+        return index < size ? pageIds[index] : NO_MORE_DOCS;
+    }
+
+    @Override
+    public int advance(int target) {
+        int from = Math.max(index, 0);
+        if (from >= size) {
+            return NO_MORE_DOCS;
+        }
+        if (pageIds[from] >= target) {
+            index = from;
+            return pageIds[from];
+        }
+        // Шаги 1, 2, 4, ... пока не перешагнём target, затем двоичный поиск внутри шага
+        int low = from;
+        int step = 1;
+        int high = from + 1;
+        while (high < size && pageIds[high] < target) {
+            low = high;
+            step <<= 1;
+            high = from + step;
+        }
+        high = Math.min(high, size);
+        while (low + 1 < high) {
+            int middle = (low + high) >>> 1;
+            if (pageIds[middle] < target) {
+                low = middle;
+            } else {
+                high = middle;
+            }
+        }
+        index = high;
+        return index < size ? pageIds[index] : NO_MORE_DOCS;
+    }
+
+    @Override
+    public float rank() {
+        return ranks[index];
+    }
+
+    @Override
+    public int cost() {
+        return size;
+    }
+}
@@ -0,0 +1,163 @@
+package searchengine.search;
+
+import searchengine.search.PostingIntersection.Matches;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * Отбор k страниц с наибольшей релевантностью без сортировки всех совпадений.
+ * Кандидаты лежат в min-куче на примитивных массивах: новая страница сравнивается
+ * с худшей из отобранных, поэтому стоимость O(n log k), память O(k).
+ * Заодно считаются точное число совпадений и наибольшая релевантность
+ */
+public final class TopKCollector {
+    private final int[] pageIds;
+    private final float[] scores;
+    private int size;
+    private int totalHits;
+    private float maxScore;
+
+    public TopKCollector(int k) {
+        pageIds = new int[Math.max(k, 0)];
+        scores = new float[pageIds.length];
+    }
+
+    public void collect(int pageId, float score) {
+        totalHits++;
+        maxScore = Math.max(maxScore, score);
+        if (size < pageIds.length) {
+            pageIds[size] = pageId;
+            scores[size] = score;
+            siftUp(size++);
+        } else if (size > 0 && isWorse(pageIds[0], scores[0], pageId, score)) {
+            pageIds[0] = pageId;
+            scores[0] = score;
+            siftDown(0);
+        }
+    }
+
+    public void collect(Matches matches) {
+        for (int i = 0; i < matches.size(); i++) {
+            collect(matches.pageIds()[i], matches.scores()[i]);
+        }
+    }
+
+    /** Сколько всего страниц было предложено, а не только отобрано */
+    public int totalHits() {
+        return totalHits;
+    }
+
+    public float maxScore() {
+        return maxScore;
+    }
+
+    /** Отобрано k страниц: дальше имеют смысл только страницы не хуже порога */
+    public boolean isFull() {
+        return size == pageIds.length;
+    }
+
+    /** Релевантность худшей из отобранных страниц (порог входа в выдачу) */
+    public float threshold() {
+        return size > 0 ? scores[0] : Float.NEGATIVE_INFINITY;
+    }
+
+    /** Отобранные страницы по убыванию релевантности (при равенстве - по возрастанию id). Куча расходуется */
+    public Matches drainSorted() {
+        int count = size;
+        int[] sortedIds = new int[count];
+        float[] sortedScores = new float[count];
+        // Из min-кучи худшая страница извлекается первой, поэтому массив заполняется с конца
+        for (int i = count - 1; i >= 0; i--) {
+            sortedIds[i] = pageIds[0];
+            sortedScores[i] = scores[0];
+            size--;
+            if (size > 0) {
+                pageIds[0] = pageIds[size];
+                scores[0] = scores[size];
+                siftDown(0);
+            }
+        }
+        return new Matches(sortedIds, sortedScores);
+    }
+
+    /**
+     * Слияние отсортированных выдач (например, по сайтам) в первые k страниц общей выдачи.
+     * Головы списков лежат в max-куче, поэтому слияние стоит O(k log числа списков)
+     */
+    public static Matches merge(List<Matches> sortedLists, int k) {
+        PriorityQueue<int[]> heads = new PriorityQueue<>((a, b) -> {
+            Matches listA = sortedLists.get(a[0]);
+            Matches listB = sortedLists.get(b[0]);
+            int pageA = listA.pageIds()[a[1]];
+            int pageB = listB.pageIds()[b[1]];
+            float scoreA = listA.scores()[a[1]];
+            float scoreB = listB.scores()[b[1]];
+            return isWorse(pageA, scoreA, pageB, scoreB) ? 1 : isWorse(pageB, scoreB, pageA, scoreA) ? -1 : 0;
+        });
+        for (int list = 0; list < sortedLists.size(); list++) {
+            if (sortedLists.get(list).size() > 0) {
+                heads.add(new int[]{list, 0});
+            }
+        }
+
+        int[] pageIds = new int[Math.max(k, 0)];
+        float[] scores = new float[pageIds.length];
+        int count = 0;
+        while (count < pageIds.length && !heads.isEmpty()) {
+            int[] head = heads.poll();
+            Matches list = sortedLists.get(head[0]);
+            pageIds[count] = list.pageIds()[head[1]];
+            scores[count++] = list.scores()[head[1]];
+            if (++head[1] < list.size()) {
+                heads.add(head);
+            }
+        }
+        return new Matches(Arrays.copyOf(pageIds, count), Arrays.copyOf(scores, count));
+    }
+
+    // Страница a хуже b: меньше релевантность или при равной - больше id
+    private static boolean isWorse(int pageA, float scoreA, int pageB, float scoreB) {
+        return scoreA < scoreB || (scoreA == scoreB && pageA > pageB);
+    }
+
+    private void siftUp(int index) {
+        while (index > 0) {
+            int parent = (index - 1) >>> 1;
+            if (!isWorse(pageIds[index], scores[index], pageIds[parent], scores[parent])) {
+                break;
+            }
+            swap(index, parent);
+            index = parent;
+        }
+    }
+
+    private void siftDown(int index) {
+        while (true) {
+            int left = 2 * index + 1;
+            if (left >= size) {
+                break;
+            }
+            int worst = left;
+            int right = left + 1;
+            if (right < size && isWorse(pageIds[right], scores[right], pageIds[left], scores[left])) {
+                worst = right;
+            }
+            if (!isWorse(pageIds[worst], scores[worst], pageIds[index], scores[index])) {
+                break;
+            }
+            swap(index, worst);
+            index = worst;
+        }
+    }
+
+    private void swap(int a, int b) {
+        int pageId = pageIds[a];
+        pageIds[a] = pageIds[b];
+        pageIds[b] = pageId;
+        float score = scores[a];
+        scores[a] = scores[b];
+        scores[b] = score;
+    }
+}
@@ -0,0 +1,172 @@
+package searchengine.services;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import searchengine.dto.corpus.CorpusSiteStats;
+import searchengine.models.SiteEntity;
+import searchengine.repository.PageRepository;
+import searchengine.repository.SiteRepository;
+import searchengine.utils.IntIntHashMap;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Статистика корпуса в памяти: список сайтов поиска, количество страниц
+ * и документные частоты лемм активного поколения каждого сайта.
+ * Индексатор обновляет её при переключении поколения, поиск и ранжирование
+ * читают без запросов COUNT(*) к БД
+ */
+@Slf4j
+@Service
+public class CorpusStatisticsService {
+    private static final long SITES_TTL_MS = 10_000; // Список сайтов перечитывается не чаще раза в 10 с
+    private static final int TOP_LEMMAS = 10;
+
+    private final SiteRepository siteRepository;
+    private final PageRepository pageRepository;
+    private final TermDictionaryService termDictionaryService;
+    private final JdbcTemplate jdbcTemplate;
+
+    private final Map<Integer, SiteStats> stats = new ConcurrentHashMap<>();
+    private volatile List<SiteEntity> sites;
+    private volatile long sitesLoadedAt;
+
+    // Статистика поколения сайта; частоты загружаются при первом обращении
+    private static final class SiteStats {
+        private final int siteId;
+        private final int generation;
+        private final long pages;
+        private volatile IntIntHashMap documentFrequencies;
+
+        private SiteStats(int siteId, int generation, long pages, IntIntHashMap documentFrequencies) {
+            this.siteId = siteId;
+            this.generation = generation;
+            this.pages = pages;
+            this.documentFrequencies = documentFrequencies;
+        }
+    }
+
+    public CorpusStatisticsService(SiteRepository siteRepository,
+                                   PageRepository pageRepository,
+                                   TermDictionaryService termDictionaryService,
+                                   JdbcTemplate jdbcTemplate) {
+        this.siteRepository = siteRepository;
+        this.pageRepository = pageRepository;
+        this.termDictionaryService = termDictionaryService;
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    /** Сайты поиска (кроме логически удалённых) */
+    public List<SiteEntity> getSites() {
+        List<SiteEntity> current = sites;
+        if (current == null || System.currentTimeMillis() - sitesLoadedAt > SITES_TTL_MS) {
+            current = List.copyOf(siteRepository.findByDeletedFalse());
+            sites = current;
+            sitesLoadedAt = System.currentTimeMillis();
+        }
+        return current;
+    }
+
+    public Optional<SiteEntity> findSite(String url) {
+        return getSites().stream().filter(site -> site.getUrl().equals(url)).findFirst();
+    }
+
+    /** Количество страниц в активном поколении сайта */
+    public long pageCount(SiteEntity site) {
+        return siteStats(site).pages;
+    }
+
+    /** На скольких страницах активного поколения сайта встречается лемма */
+    public int documentFrequency(SiteEntity site, int termId) {
+        return documentFrequencies(siteStats(site)).get(termId);
+    }
+
+    /** Количество разных лемм в активном поколении сайта */
+    public int lemmaCount(SiteEntity site) {
+        return documentFrequencies(siteStats(site)).size();
+    }
+
+    /** Индексатор переключил сайт на новое поколение */
+    public void onGenerationCommitted(SiteEntity site, long pages, IntIntHashMap documentFrequencies) {
+        stats.put(site.getId(), new SiteStats(site.getId(), site.getActiveGeneration(), pages, documentFrequencies));
+        sites = null;
+    }
+
+    /** Сайт удалён или исключён из поиска */
+    public void onSiteRemoved(int siteId) {
+        stats.remove(siteId);
+        sites = null;
+    }
+
+    /** Содержимое статистики для администратора */
+    public List<CorpusSiteStats> describe() {
+        List<CorpusSiteStats> result = new ArrayList<>();
+        for (SiteEntity site : getSites()) {
+            SiteStats siteStats = siteStats(site);
+            CorpusSiteStats item = new CorpusSiteStats();
+            item.setSiteId(site.getId());
+            item.setSite(site.getUrl());
+            item.setGeneration(siteStats.generation);
+            item.setPages(siteStats.pages);
+            IntIntHashMap frequencies = siteStats.documentFrequencies;
+            item.setLemmas(frequencies != null ? frequencies.size() : -1);
+            item.setTopLemmas(frequencies != null ? topLemmas(frequencies) : Map.of());
+            result.add(item);
+        }
+        return result;
+    }
+
+    private SiteStats siteStats(SiteEntity site) {
+        SiteStats current = stats.get(site.getId());
+        if (current == null || current.generation != site.getActiveGeneration()) {
+            // Поколение ещё не видели (старт приложения или сайт сменился): считаем один раз
+            SiteStats loaded = new SiteStats(site.getId(), site.getActiveGeneration(),
+                    pageRepository.countBySiteAndGeneration(site, site.getActiveGeneration()), null);
+            current = stats.merge(site.getId(), loaded,
+                    (existing, candidate) -> existing.generation >= candidate.generation ? existing : candidate);
+        }
+        return current;
+    }
+
+    private IntIntHashMap documentFrequencies(SiteStats siteStats) {
+        IntIntHashMap frequencies = siteStats.documentFrequencies;
+        if (frequencies == null) {
+            synchronized (siteStats) {
+                frequencies = siteStats.documentFrequencies;
+                if (frequencies == null) {
+                    frequencies = loadDocumentFrequencies(siteStats);
+                    siteStats.documentFrequencies = frequencies;
+                }
+            }
+        }
+        return frequencies;
+    }
+
+    private IntIntHashMap loadDocumentFrequencies(SiteStats siteStats) {
+        IntIntHashMap frequencies = new IntIntHashMap();
+        jdbcTemplate.query("SELECT term_id, frequency FROM lemma WHERE site_id = ? AND generation = ?",
+                rs -> {
+                    frequencies.put(rs.getInt(1), rs.getInt(2));
+                }, siteStats.siteId, siteStats.generation);
+        return frequencies;
+    }
+
+    private Map<String, Integer> topLemmas(IntIntHashMap frequencies) {
+        PriorityQueue<int[]> top = new PriorityQueue<>(Comparator.comparingInt((int[] entry) -> entry[1]));
+        frequencies.forEach((termId, frequency) -> {
+            top.add(new int[]{termId, frequency});
+            if (top.size() > TOP_LEMMAS) {
+                top.poll();
+            }
+        });
+        List<int[]> sorted = new ArrayList<>(top);
+        sorted.sort((a, b) -> Integer.compare(b[1], a[1]));
+        Map<String, Integer> result = new LinkedHashMap<>();
+        for (int[] entry : sorted) {
+            result.put(termDictionaryService.lemmaOf(entry[0]), entry[1]);
+        }
+        return result;
+    }
+}
@@ -13,6 +13,13 @@ import org.springframework.transaction.support.TransactionTemplate;
 import searchengine.config.ConfigIndexing;
 import searchengine.models.*;
 import searchengine.repository.*;
+import searchengine.search.PagePositions;
+import searchengine.search.SentenceBoundaries;
+import searchengine.search.SiteIndex;
+import searchengine.storage.ContentStore;
+import searchengine.utils.ObjectIntHashMap;
+import searchengine.utils.IntIntHashMap;
+import searchengine.utils.ThreadLocalIntCounter;
 
 import java.io.IOException;
 import java.net.URI;
@@ -31,6 +38,13 @@ public class IndexingService {
     private final LemmaRepository lemmaRepository;
     private final IndexRepository indexRepository;
     private final LemmaService lemmaService;
+    private final TermDictionaryService termDictionaryService;
+    private final PurgeService purgeService;
+    private final InvertedIndexService invertedIndexService;
+    private final CorpusStatisticsService corpusStatisticsService;
+    private final LemmaFilterService lemmaFilterService;
+    private final SuggestService suggestService;
+    private final ContentStore contentStore;
     private final ConfigIndexing configIndexing;
     private final Random random = new Random();
     private final TransactionTemplate transactionTemplate;
@@ -39,37 +53,51 @@ public class IndexingService {
     private final Map<String, Boolean> stopFlags = new ConcurrentHashMap<>();
     private final Map<String, Set<String>> visitedUrlsMap = new ConcurrentHashMap<>();
     private final Map<String, SiteEntity> activeSites = new ConcurrentHashMap<>();
-    private final Map<String, Map<String, Integer>> pageLemmasCache = new ConcurrentHashMap<>();
-    private final Map<String, Map<String, Integer>> siteLemmasCache = new ConcurrentHashMap<>();
+    private final Map<String, PageTerms> pageLemmasCache = new ConcurrentHashMap<>(); // id терминов и tf страницы
+    private final Map<String, ThreadLocalIntCounter> siteLemmasCache = new ConcurrentHashMap<>(); // id термина -> df
     private final Map<Integer, Float> idfCache = new ConcurrentHashMap<>();
 
+    // synchronized вместе с deleteSiteData: проверка удаления и захват сайта обходом атомарны
+    // относительно удаления, обход не начнёт писать новое поколение в удаляемый сайт
     @Transactional
-    public boolean startIndexing(String siteUrl) {
+    public synchronized boolean startIndexing(String siteUrl) {
         // Проверяем, не идет ли уже индексация
         if (activePools.containsKey(siteUrl)) {
             //log.info("Индексация сайта {} уже запущена", siteUrl);
             return false;
         }
 
-        deleteSite(siteUrl); // очистка данных в БД
-
         ConfigSite configSite = configSiteRepository.findByUrl(siteUrl)
                 .orElseThrow(() -> new RuntimeException("Сайт не найден: " + siteUrl));
 
-        // Создаём или получаем SiteEntity
+        // Создаём или получаем SiteEntity. Данные сайта не удаляются:
+        // поиск продолжает обслуживать текущее поколение до завершения обхода
         SiteEntity siteEntity = siteRepository.findByUrl(siteUrl)
                 .orElseGet(() -> {
                     SiteEntity newSite = new SiteEntity();
-                    newSite.setName(configSite.getName());
                     newSite.setUrl(siteUrl);
+                    newSite.setActiveGeneration(0);
+                    newSite.setDeleted(false);
                     return newSite;
                 });
 
+        // Данные удалённого сайта ещё удаляются в фоне
+        if (siteEntity.getDeleted()) {
+            log.info("Сайт {} ещё удаляется, индексация невозможна", siteUrl);
+            return false;
+        }
+
+        siteEntity.setName(configSite.getName());
         siteEntity.setStatus(SiteStatus.INDEXING);
         siteEntity.setStatusTime(LocalDateTime.now());
         siteEntity.setLastError(null);
         siteRepository.save(siteEntity);
 
+        // Новый обход пишет в теневое поколение с номером из счётчика сайта:
+        // поколение, ещё стоящее в очереди на удаление, не совпадёт с новым
+        int generation = allocateGeneration(siteEntity, dropStaleGenerations(siteEntity));
+        siteRepository.save(siteEntity);
+
         // Сохраняем ссылку на сайт
         activeSites.put(siteUrl, siteEntity);
 
@@ -78,7 +106,7 @@ public class IndexingService {
         // Инициализируем структуры для отслеживания
         visitedUrlsMap.put(siteUrl, ConcurrentHashMap.newKeySet());
         stopFlags.put(siteUrl, false);
-        siteLemmasCache.put(siteUrl, new ConcurrentHashMap<>());
+        siteLemmasCache.put(siteUrl, new ThreadLocalIntCounter());
 
         // Создаем ForkJoinPool для этого сайта
         ForkJoinPool pool = new ForkJoinPool();
@@ -90,6 +118,7 @@ public class IndexingService {
                 PageIndexer mainTask = new PageIndexer(
                         siteUrl,
                         siteEntity,
+                        generation,
                         visitedUrlsMap.get(siteUrl)
                 );
 
@@ -98,13 +127,13 @@ public class IndexingService {
 
                 // После завершения проверяем статус
                 if (stopFlags.getOrDefault(siteUrl, false)) {
-                    // Пользователь остановил индексацию
+                    // Пользователь остановил индексацию, прежнее поколение остаётся в поиске
                     updateSiteStatus(siteEntity, SiteStatus.FAILED,
                             "Индексация остановлена пользователем");
+                    dropGenerationAsync(siteEntity, generation);
                     //log.info("Индексация сайта {} остановлена пользователем", siteUrl);
                 } else {
-                    completeSiteIndexing(siteUrl, siteEntity);
-                    updateSiteStatus(siteEntity, SiteStatus.INDEXED, null);
+                    completeSiteIndexing(siteUrl, siteEntity, generation);
 
                     /*log.info("Индексация сайта {} завершена. Страниц: {}",
                             siteUrl,
@@ -117,6 +146,7 @@ public class IndexingService {
                 log.error("Критическая ошибка при индексации сайта {}: {}", siteUrl, e.getMessage(), e);
                 updateSiteStatus(siteEntity, SiteStatus.FAILED,
                         "Критическая ошибка: " + e.getMessage());
+                dropGenerationAsync(siteEntity, generation);
             } finally {
                 // Очищаем ресурсы только после обновления статуса
                 cleanupResources(siteUrl);
@@ -126,210 +156,169 @@ public class IndexingService {
         return true;
     }
 
-    private void completeSiteIndexing(String siteUrl, SiteEntity siteEntity) {
-        try {
-            processLemmasForSite(siteUrl, siteEntity);
-
-            siteLemmasCache.remove(siteUrl);
-            pageLemmasCache.keySet().removeIf(key -> key.startsWith(siteUrl));
-            //log.info("Обработка лемм для сайта {} завершена", siteUrl);
-        } catch (Exception e) {
-            log.error("Ошибка при завершении обработки лемм сайта {}: {}", siteUrl, e.getMessage());
+    private void completeSiteIndexing(String siteUrl, SiteEntity siteEntity, int generation) {
+        int previousGeneration = siteEntity.getActiveGeneration();
+
+        // Ошибки пробрасываются наверх: при неудаче теневое поколение удаляется,
+        // а поиск продолжает работать с прежним
+        // Контрольная точка: обход завершён, счётчики потоков сводятся в одну таблицу (id термина -> df)
+        ThreadLocalIntCounter siteCounter = siteLemmasCache.get(siteUrl);
+        IntIntHashMap siteLemmas = siteCounter != null ? siteCounter.merge() : new IntIntHashMap();
+        long totalPages = pageRepository.countBySiteAndGeneration(siteEntity, generation);
+        SiteIndex siteIndex = processLemmasForSite(siteUrl, siteEntity, generation, siteLemmas, totalPages);
+
+        // Атомарное переключение поиска на новое поколение
+        transactionTemplate.execute(status -> {
+            siteRepository.switchGeneration(siteEntity.getId(), generation,
+                    SiteStatus.INDEXED, LocalDateTime.now());
+            return null;
+        });
+        siteEntity.setActiveGeneration(generation);
+        // Индекс в памяти подменяется сразу после переключения поколения в БД
+        if (siteIndex != null) {
+            invertedIndexService.publish(siteIndex);
         }
+        corpusStatisticsService.onGenerationCommitted(siteEntity, totalPages, siteLemmas);
+        lemmaFilterService.onGenerationCommitted(siteEntity, siteLemmas);
+        suggestService.onGenerationCommitted(siteEntity, totalPages, siteLemmas);
+
+        siteLemmasCache.remove(siteUrl);
+        pageLemmasCache.keySet().removeIf(key -> key.startsWith(siteUrl));
+
+        // Прежнее поколение больше не видно поиску, удаляем его в фоне
+        dropGenerationAsync(siteEntity, previousGeneration);
+        //log.info("Обработка лемм для сайта {} завершена", siteUrl);
     }
 
-    private void processLemmasForSite(String siteUrl, SiteEntity siteEntity) {
-        try {
-            //log.info("Начинаем обработку лемм для сайта: {}", siteUrl);
-            Map<String, Integer> siteLemmas = siteLemmasCache.get(siteUrl);
-            if (siteLemmas == null || siteLemmas.isEmpty()) {
-                //log.info("Нет лемм для обработки сайта: {}", siteUrl);
-                return;
-            }
+    private SiteIndex processLemmasForSite(String siteUrl, SiteEntity siteEntity, int generation,
+                                           IntIntHashMap siteLemmas, long totalPages) {
+        //log.info("Начинаем обработку лемм для сайта: {}", siteUrl);
+        if (siteLemmas.isEmpty()) {
+            //log.info("Нет лемм для обработки сайта: {}", siteUrl);
+            return invertedIndexService.isEnabled()
+                    ? SiteIndex.builder(siteEntity.getId(), generation, 0).build() : null;
+        }
 
-            // Получаем общее количество страниц
-            List<PageEntity> pages = pageRepository.findBySite(siteEntity);
-            int totalPages = pages.size();
-            //log.info("Всего страниц для расчета frequency: {}", totalPages);
-
-            // Сохраняем леммы с frequency (количество страниц с этой леммой)
-            for (Map.Entry<String, Integer> entry : siteLemmas.entrySet()) {
-                String lemmaText = entry.getKey();
-                int pageCount = entry.getValue(); // сколько страниц содержит эту лемму
-
-                // Исправляем, если больше totalPages
-                if (pageCount > totalPages) {
-                    /*log.warn("Исправляем frequency леммы '{}': было {}, станет {}",
-                            lemmaText, pageCount, totalPages);*/
-                    pageCount = totalPages;
-                }
+        //log.info("Всего страниц для расчета frequency: {}", totalPages);
 
-                LemmaEntity lemmaEntity = lemmaRepository
-                        .findBySiteAndLemma(siteEntity, lemmaText)
-                        .orElseGet(() -> {
-                            LemmaEntity newLemma = new LemmaEntity();
-                            newLemma.setSite(siteEntity);
-                            newLemma.setLemma(lemmaText);
-                            newLemma.setFrequency(0);
-                            return newLemma;
-                        });
-
-                // frequency = количество страниц, где встречается эта лемма
-                lemmaEntity.setFrequency(pageCount);
-                lemmaRepository.save(lemmaEntity);
-            }
+        // Теневое поколение пустое, поэтому леммы только создаются (батчами)
+        Map<Integer, LemmaEntity> lemmasByTerm = new HashMap<>(siteLemmas.size() * 2);
+        List<LemmaEntity> batch = new ArrayList<>(1000);
 
-            //log.info("Обработано {} уникальных лемм для сайта: {}", siteLemmas.size(), siteUrl);
+        // Сохраняем леммы с frequency (количество страниц с этой леммой)
+        siteLemmas.forEach((termId, documentFrequency) -> {
+            int pageCount = documentFrequency; // сколько страниц содержит эту лемму
 
-            // Теперь рассчитываем TF-IDF с правильными frequency
-            processRankCountForSite(siteUrl, siteEntity);
+            // Исправляем, если больше totalPages
+            if (pageCount > totalPages) {
+                /*log.warn("Исправляем frequency леммы '{}': было {}, станет {}",
+                        termId, pageCount, totalPages);*/
+                pageCount = (int) totalPages;
+            }
 
-        } catch (Exception e) {
-            log.error("Ошибка при обработке лемм для сайта {}: {}", siteUrl, e.getMessage());
+            LemmaEntity lemmaEntity = new LemmaEntity();
+            lemmaEntity.setSite(siteEntity);
+            lemmaEntity.setGeneration(generation);
+            lemmaEntity.setTermId(termId);
+            // frequency = количество страниц, где встречается эта лемма
+            lemmaEntity.setFrequency(pageCount);
+            // Лемма почти на всех страницах (шаблон сайта) бесполезна для поиска: храним только статистику
+            lemmaEntity.setStopLemma(pageCount >= totalPages * configIndexing.getStopLemmaRatio());
+
+            lemmasByTerm.put(termId, lemmaEntity);
+            batch.add(lemmaEntity);
+            if (batch.size() >= 1000) {
+                lemmaRepository.saveAll(batch);
+                batch.clear();
+            }
+        });
+        if (!batch.isEmpty()) {
+            lemmaRepository.saveAll(batch);
         }
+
+        //log.info("Обработано {} уникальных лемм для сайта: {}", siteLemmas.size(), siteUrl);
+
+        // Теперь рассчитываем TF-IDF с правильными frequency
+        return processRankCountForSite(siteUrl, siteEntity, generation, lemmasByTerm);
     }
 
-    private void processRankCountForSite(String siteUrl, SiteEntity siteEntity) {
-        try {
-            List<PageEntity> pages = pageRepository.findBySite(siteEntity);
-            int totalPages = pages.size();
+    /** Рассчитать и сохранить ранги; заодно собирается индекс поколения в памяти (null, если он отключён) */
+    private SiteIndex processRankCountForSite(String siteUrl, SiteEntity siteEntity, int generation,
+                                              Map<Integer, LemmaEntity> lemmasByTerm) {
+        List<PageEntity> pages = pageRepository.findBySiteAndGeneration(siteEntity, generation);
+        int totalPages = pages.size();
+
+        SiteIndex.Builder siteIndex = invertedIndexService.isEnabled()
+                ? SiteIndex.builder(siteEntity.getId(), generation, totalPages) : null;
+        if (siteIndex != null) {
+            lemmasByTerm.forEach((termId, lemma) ->
+                    siteIndex.term(termId, lemma.getFrequency(), lemma.getStopLemma()));
+        }
 
-            if (totalPages == 0) {
-                //log.info("Нет страниц для расчета rank у сайта: {}", siteUrl);
-                return;
-            }
+        if (totalPages == 0) {
+            //log.info("Нет страниц для расчета rank у сайта: {}", siteUrl);
+            return siteIndex != null ? siteIndex.build() : null;
+        }
 
-            //log.info("Расчет TF-IDF для сайта {}: {} страниц", siteUrl, totalPages);
-
-            // Батчинг для сохранения
-            List<IndexEntity> batch = new ArrayList<>(1000);
-
-            for (PageEntity page : pages) {
-                //String pageKey = page.getId() + "_" + siteUrl;
-                String pageKey = siteUrl + page.getPath();
-                Map<String, Integer> pageLemmas = pageLemmasCache.get(pageKey);
-
-                if (pageLemmas != null && !pageLemmas.isEmpty()) {
-                    for (Map.Entry<String, Integer> entry : pageLemmas.entrySet()) {
-                        String lemmaText = entry.getKey();
-                        int tf = entry.getValue(); // Term Frequency
-
-                        // Находим лемму в БД
-                        LemmaEntity lemmaEntity = lemmaRepository.findBySiteAndLemma(siteEntity, lemmaText)
-                                .orElse(null);
-
-                        if (lemmaEntity != null && lemmaEntity.getFrequency() > 0) {
-                            // Оптимизация: пропустить стоп-слова и редкие леммы
-                            /*if (lemmaEntity.getFrequency() >= totalPages * 0.8) {
-                                continue; // Слишком частая лемма (стоп-слово)
-                            }*/
-
-                            // Быстрый расчет с кэшированием
-                            float idf = calculateIdf(totalPages, lemmaEntity.getFrequency());
-                            float rank = tf * idf;
-
-                            // Создаем индекс
-                            IndexEntity indexEntity = indexRepository
-                                    .findByPageAndLemma(page, lemmaEntity)
-                                    .orElseGet(() -> {
-                                        IndexEntity newIndex = new IndexEntity();
-                                        newIndex.setPage(page);
-                                        newIndex.setLemma(lemmaEntity);
-                                        newIndex.setRank_count(0f);
-                                        return newIndex;
-                                    });
-
-                            indexEntity.setRank_count(rank);
-                            batch.add(indexEntity);
-
-                            // Сохраняем батчем
-                            if (batch.size() >= 1000) {
-                                indexRepository.saveAll(batch);
-                                batch.clear();
-                                //log.debug("Сохранен батч из 1000 индексов");
-                            }
-                        }
-                    }
-                }
-            }
+        //log.info("Расчет TF-IDF для сайта {}: {} страниц", siteUrl, totalPages);
 
-            // Сохранить оставшиеся записи
-            if (!batch.isEmpty()) {
-                indexRepository.saveAll(batch);
-                //log.debug("Сохранен остаточный батч из {} индексов", batch.size());
-            }
+        // Батчинг для сохранения
+        List<IndexEntity> batch = new ArrayList<>(1000);
 
-            // Очистить кэш для этого сайта
-            idfCache.clear();
+        for (PageEntity page : pages) {
+            //String pageKey = page.getId() + "_" + siteUrl;
+            String pageKey = siteUrl + page.getPath();
+            PageTerms pageLemmas = pageLemmasCache.get(pageKey);
 
-            //log.info("Расчет TF-IDF завершен для {} страниц сайта: {}", pages.size(), siteUrl);
-        } catch (Exception e) {
-            log.error("Ошибка при расчете TF-IDF для сайта {}: {}", siteUrl, e.getMessage());
-        }
+            if (pageLemmas != null) {
+                for (int i = 0; i < pageLemmas.termIds().length; i++) {
+                    int tf = pageLemmas.frequencies()[i]; // Term Frequency
 
-        // для большого количества лемм долгое вычисление
-        /*try {
-            // Получаем все страницы сайта
-            List<PageEntity> pages = pageRepository.findBySite(siteEntity);
-            int totalPages = pages.size();
+                    // Лемма только что сохранена, повторный запрос в БД не нужен
+                    LemmaEntity lemmaEntity = lemmasByTerm.get(pageLemmas.termIds()[i]);
 
-            if (totalPages == 0) {
-                log.info("Нет страниц для расчета rank у сайта: {}", siteUrl);
-                return;
-            }
+                    if (lemmaEntity != null && lemmaEntity.getFrequency() > 0) {
+                        // Записи индекса для стоп-лемм не создаются, поиск их всё равно не использует
+                        if (lemmaEntity.getStopLemma()) {
+                            continue;
+                        }
 
-            log.info("Расчет TF-IDF для сайта {}: {} страниц", siteUrl, totalPages);
-
-            for (PageEntity page : pages) {
-                String pageKey = page.getId() + "_" + siteUrl;
-                Map<String, Integer> pageLemmas = pageLemmasCache.get(pageKey);
-
-                if (pageLemmas != null && !pageLemmas.isEmpty()) {
-                    for (Map.Entry<String, Integer> entry : pageLemmas.entrySet()) {
-                        String lemmaText = entry.getKey();
-                        int tf = entry.getValue(); // Term Frequency (частота на странице)
-
-                        // Находим лемму в БД
-                        LemmaEntity lemmaEntity = lemmaRepository.findBySiteAndLemma(siteEntity, lemmaText)
-                                .orElse(null);
-
-                        if (lemmaEntity != null && lemmaEntity.getFrequency() > 0) {
-                            // Inverse Document Frequency
-                            // IDF = log(общее_число_страниц / число_страниц_с_этой_леммой)
-                            float idf = (float) Math.log((float) totalPages / lemmaEntity.getFrequency());
-
-                            // TF-IDF = TF * IDF
-                            float rank = tf * idf;
-
-                            // Создаем или обновляем индекс
-                            IndexEntity indexEntity = indexRepository
-                                    .findByPageAndLemma(page, lemmaEntity)
-                                    .orElseGet(() -> {
-                                        IndexEntity newIndex = new IndexEntity();
-                                        newIndex.setPage(page);
-                                        newIndex.setLemma(lemmaEntity);
-                                        newIndex.setRank_count(0f);
-                                        return newIndex;
-                                    });
-
-                            indexEntity.setRank_count(rank);
-                            indexRepository.save(indexEntity);
-
-                            // Логирование для отладки
-                            if (log.isDebugEnabled()) {
-                                log.debug("Лемма '{}': tf={}, idf={:.4f}, rank={:.4f}, frequency={}",
-                                        lemmaText, tf, idf, rank, lemmaEntity.getFrequency());
-                            }
+                        // Быстрый расчет с кэшированием
+                        float idf = calculateIdf(totalPages, lemmaEntity.getFrequency());
+                        float rank = tf * idf;
+
+                        // Создаем индекс (в теневом поколении записей ещё нет)
+                        IndexEntity indexEntity = new IndexEntity();
+                        indexEntity.setPage(page);
+                        indexEntity.setLemma(lemmaEntity);
+                        indexEntity.setRank_count(rank);
+                        batch.add(indexEntity);
+                        if (siteIndex != null) {
+                            siteIndex.addPosting(pageLemmas.termIds()[i], page.getId(), rank);
+                        }
+
+                        // Сохраняем батчем
+                        if (batch.size() >= 1000) {
+                            indexRepository.saveAll(batch);
+                            batch.clear();
+                            //log.debug("Сохранен батч из 1000 индексов");
                         }
                     }
                 }
             }
+        }
 
-            //log.info("Расчет TF-IDF завершен для {} страниц сайта: {}", pages.size(), siteUrl);
+        // Сохранить оставшиеся записи
+        if (!batch.isEmpty()) {
+            indexRepository.saveAll(batch);
+            //log.debug("Сохранен остаточный батч из {} индексов", batch.size());
+        }
 
-        } catch (Exception e) {
-            log.error("Ошибка при расчете TF-IDF для сайта {}: {}", siteUrl, e.getMessage());
-        }*/
+        // Очистить кэш для этого сайта
+        idfCache.clear();
+
+        //log.info("Расчет TF-IDF завершен для {} страниц сайта: {}", pages.size(), siteUrl);
+        return siteIndex != null ? siteIndex.build() : null;
     }
 
     private float calculateIdf(int totalPages, int lemmaFrequency) {
@@ -481,24 +470,69 @@ public class IndexingService {
         //log.info("Ресурсы очищены для сайта: {}", siteUrl);
     }
 
-    @Transactional
-    private void deleteSite(String siteUrl) {
-        indexRepository.deleteBySiteUrl(siteUrl);
-        lemmaRepository.deleteBySiteUrl(siteUrl);
-        pageRepository.deleteBySiteUrl(siteUrl);
-        siteRepository.deleteByUrl(siteUrl);
-        //log.info("Удалены данные сайта: {}", siteUrl);
+    /**
+     * Удаляет в фоне поколения сайта, оставшиеся от прерванных обходов.
+     * Возвращает максимальный занятый номер поколения
+     */
+    private int dropStaleGenerations(SiteEntity siteEntity) {
+        int activeGeneration = siteEntity.getActiveGeneration();
+        Set<Integer> staleGenerations = new TreeSet<>(
+                pageRepository.findOtherGenerations(siteEntity, activeGeneration));
+        staleGenerations.addAll(lemmaRepository.findOtherGenerations(siteEntity, activeGeneration));
+
+        int maxGeneration = activeGeneration;
+        for (Integer staleGeneration : staleGenerations) {
+            dropGenerationAsync(siteEntity, staleGeneration);
+            maxGeneration = Math.max(maxGeneration, staleGeneration);
+        }
+        return maxGeneration;
+    }
+
+    private int allocateGeneration(SiteEntity siteEntity, int maxKnownGeneration) {
+        int generation = siteEntity.getNextGeneration();
+        if (generation == 0) {
+            // Сайт создан до появления счётчика: начинаем после всех известных поколений
+            generation = maxKnownGeneration + 1;
+        }
+        siteEntity.setNextGeneration(generation + 1);
+        return generation;
+    }
+
+    private void dropGenerationAsync(SiteEntity siteEntity, int generation) {
+        purgeService.purgeGeneration(siteEntity, generation);
+    }
+
+    /**
+     * Удалить проиндексированные данные сайта. Сайт сразу исключается из поиска,
+     * строки удаляются порциями в фоне. Во время индексации сайта удаление невозможно
+     */
+    public synchronized boolean deleteSiteData(String siteUrl) {
+        if (activePools.containsKey(siteUrl)) {
+            return false;
+        }
+        siteRepository.findByUrl(siteUrl)
+                .filter(site -> !site.getDeleted())
+                .ifPresent(site -> {
+                    purgeService.purgeSite(site);
+                    invertedIndexService.remove(site.getId());
+                    corpusStatisticsService.onSiteRemoved(site.getId());
+                    lemmaFilterService.onSiteRemoved(site.getId());
+                    suggestService.onSiteRemoved(site.getId());
+                });
+        return true;
     }
 
     // Внутренний класс для рекурсивного обхода страниц
     private class PageIndexer extends RecursiveAction {
         private final String url;
         private final SiteEntity siteEntity;
+        private final int generation;
         private final Set<String> visitedUrls;
 
-        public PageIndexer(String url, SiteEntity siteEntity, Set<String> visitedUrls) {
+        public PageIndexer(String url, SiteEntity siteEntity, int generation, Set<String> visitedUrls) {
             this.url = url;
             this.siteEntity = siteEntity;
+            this.generation = generation;
             this.visitedUrls = visitedUrls;
         }
 
@@ -559,7 +593,7 @@ public class IndexingService {
                             // Используйте фильтрацию!
                             if (isValidForIndexing(normalizedHref, siteEntity.getUrl())) {
                                 if (!visitedUrls.contains(normalizedHref)) {
-                                    subtasks.add(new PageIndexer(normalizedHref, siteEntity, visitedUrls));
+                                    subtasks.add(new PageIndexer(normalizedHref, siteEntity, generation, visitedUrls));
                                 }
                             }
                         }
@@ -687,21 +721,33 @@ public class IndexingService {
                 PageEntity pageEntity = new PageEntity();
                 pageEntity.setSite(siteEntity);
                 pageEntity.setPath(path);
+                pageEntity.setGeneration(generation);
                 pageEntity.setCode(statusCode);
-                pageEntity.setContentHtml(cleanContent);
-                pageEntity.setContentText(cleanText);
+                // Содержимое сжимается во внешнее хранилище, в таблице page остаются только ссылки
+                pageEntity.setHtmlRef(contentStore.write(siteEntity.getId(), generation, cleanContent));
+                pageEntity.setTextRef(contentStore.write(siteEntity.getId(), generation, cleanText));
+                // Границы предложений считаются один раз, сниппеты строятся по ним
+                pageEntity.setSentencesRef(contentStore.write(siteEntity.getId(), generation,
+                        SentenceBoundaries.encode(SentenceBoundaries.split(cleanText))));
+
+                // Позиции слов собираются за тот же проход, что и частоты лемм
+                PagePositions.Builder positions = configIndexing.isPositions() ? new PagePositions.Builder() : null;
+                ObjectIntHashMap<String> lemmas = lemmaService.countLemmas(cleanText, positions);
+                PageTerms pageLemmas = toTermIds(lemmas);
+                if (positions != null && !positions.isEmpty()) {
+                    byte[] encoded = positions.encode(termDictionaryService.idsOf(lemmas.keys()));
+                    pageEntity.setPositionsRef(contentStore.write(siteEntity.getId(), generation, encoded));
+                }
 
                 pageRepository.save(pageEntity);
 
-                Map<String, Integer> pageLemmas = lemmaService.extractLemmas(cleanText);
-
                 /*String pageKey = savedPage.getId() + "_" + siteEntity.getUrl();
                 pageLemmasCache.put(pageKey, pageLemmas);*/
                 String pageKey = siteEntity.getUrl() + path;
                 pageLemmasCache.put(pageKey, pageLemmas);
 
                 // Только для НОВЫХ страниц обновляем frequency
-                updateSiteLemmasCache(siteEntity.getUrl(), pageLemmas.keySet());
+                updateSiteLemmasCache(siteEntity.getUrl(), pageLemmas.termIds());
 
                 //log.info("Страница сохранена: {}", pageKey);
             } catch (Exception e) {
@@ -709,21 +755,24 @@ public class IndexingService {
             }
         }
 
-        private void updateSiteLemmasCache(String siteUrl, Set<String> uniqueLemmas) {
-            siteLemmasCache.compute(siteUrl, (key, existingMap) -> {
-                if (existingMap == null) {
-                    Map<String, Integer> newMap = new ConcurrentHashMap<>();
-                    for (String lemma : uniqueLemmas) {
-                        newMap.put(lemma, 1);
-                    }
-                    return newMap;
-                } else {
-                    for (String lemma : uniqueLemmas) {
-                        existingMap.merge(lemma, 1, Integer::sum);
-                    }
-                    return existingMap;
-                }
-            });
+        // Частоты лемм страницы переводятся на id глобального словаря
+        private PageTerms toTermIds(ObjectIntHashMap<String> lemmas) {
+            List<String> keys = lemmas.keys();
+            Map<String, Integer> termIds = termDictionaryService.idsOf(keys);
+            int[] ids = new int[keys.size()];
+            int[] frequencies = new int[keys.size()];
+            for (int i = 0; i < keys.size(); i++) {
+                ids[i] = termIds.get(keys.get(i));
+                frequencies[i] = lemmas.get(keys.get(i));
+            }
+            return new PageTerms(ids, frequencies);
+        }
+
+        private void updateSiteLemmasCache(String siteUrl, int[] uniqueLemmas) {
+            ThreadLocalIntCounter siteLemmas = siteLemmasCache.get(siteUrl);
+            if (siteLemmas != null) {
+                siteLemmas.incrementAll(uniqueLemmas);
+            }
         }
 
         private String extractPathUrl(String fullUrl, String baseUrl) {
@@ -796,4 +845,8 @@ public class IndexingService {
                 .map(SiteEntity::getStatus)
                 .orElse(SiteStatus.FAILED);
     }
+
+    // Леммы страницы в компактном виде: id терминов и их частоты в параллельных массивах
+    private record PageTerms(int[] termIds, int[] frequencies) {
+    }
 }
@@ -4,17 +4,26 @@ import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.boot.context.event.ApplicationReadyEvent;
 import org.springframework.context.event.EventListener;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.stereotype.Service;
 import searchengine.models.ConfigSite;
 import searchengine.repository.ConfigSiteRepository;
+import searchengine.storage.ContentStore;
 
 import java.util.List;
+import java.util.Map;
 
 @Slf4j
 @Service
 @RequiredArgsConstructor
 public class InitializerDBService {
+    private static final int CONTENT_MIGRATION_BATCH = 500; // Страниц за один проход переноса содержимого
+
     private final ConfigSiteRepository configSiteRepository;
+    private final JdbcTemplate jdbcTemplate;
+    private final ContentStore contentStore;
 
     @EventListener(ApplicationReadyEvent.class)
     public void initializeConfigSiteData() {
@@ -30,6 +39,85 @@ public class InitializerDBService {
         }
     }
 
+    // Текст леммы переехал в словарь term; старая колонка NOT NULL мешает вставке новых строк.
+    // Перед удалением колонки леммы переносятся в словарь, строки lemma получают term_id -
+    // проиндексированные ранее сайты продолжают искаться без переиндексации.
+    // Выполняется первым: индекс в памяти, фильтры и подсказки читают lemma при старте
+    @Order(Ordered.HIGHEST_PRECEDENCE)
+    @EventListener(ApplicationReadyEvent.class)
+    public void migrateLegacyLemmaColumn() {
+        if (!hasColumn("lemma", "lemma")) {
+            return;
+        }
+        log.info("Перенос лемм из колонки lemma.lemma в словарь term");
+        // Сравнение бинарное, как в term: "елка" и "ёлка" - разные леммы
+        int terms = jdbcTemplate.update(
+                "INSERT IGNORE INTO term (lemma) " +
+                        "SELECT DISTINCT CONVERT(lemma USING utf8mb4) COLLATE utf8mb4_bin FROM lemma WHERE term_id = 0");
+        int lemmas = jdbcTemplate.update(
+                "UPDATE lemma l JOIN term t ON t.lemma = CONVERT(l.lemma USING utf8mb4) COLLATE utf8mb4_bin " +
+                        "SET l.term_id = t.id WHERE l.term_id = 0");
+        log.info("В словарь добавлено лемм: {}, строк lemma связано со словарём: {}", terms, lemmas);
+        jdbcTemplate.execute("ALTER TABLE lemma DROP COLUMN lemma");
+    }
+
+    // Содержимое страниц переехало в ContentStore; страницы, проиндексированные раньше, хранят его
+    // в колонках content_html/content_text. Оно переносится в хранилище порциями по возрастанию id
+    // (прерванный перенос продолжается при следующем старте), после чего колонки удаляются
+    @Order(Ordered.HIGHEST_PRECEDENCE + 1)
+    @EventListener(ApplicationReadyEvent.class)
+    public void migrateLegacyPageContent() {
+        boolean hasHtml = hasColumn("page", "content_html");
+        boolean hasText = hasColumn("page", "content_text");
+        if (!hasHtml && !hasText) {
+            return;
+        }
+        String htmlColumn = hasHtml ? "content_html" : "NULL";
+        String textColumn = hasText ? "content_text" : "NULL";
+        log.info("Перенос содержимого страниц из таблицы page в хранилище содержимого");
+
+        int lastId = 0;
+        int migrated = 0;
+        while (true) {
+            List<Map<String, Object>> rows = jdbcTemplate.queryForList(
+                    "SELECT id, site_id, generation, " + htmlColumn + " AS legacy_html, " +
+                            textColumn + " AS legacy_text FROM page " +
+                            "WHERE id > ? AND html_ref IS NULL AND text_ref IS NULL ORDER BY id LIMIT ?",
+                    lastId, CONTENT_MIGRATION_BATCH);
+            if (rows.isEmpty()) {
+                break;
+            }
+            for (Map<String, Object> row : rows) {
+                lastId = ((Number) row.get("id")).intValue();
+                int siteId = ((Number) row.get("site_id")).intValue();
+                int generation = ((Number) row.get("generation")).intValue();
+                Long htmlRef = contentStore.write(siteId, generation, (String) row.get("legacy_html"));
+                Long textRef = contentStore.write(siteId, generation, (String) row.get("legacy_text"));
+                if (htmlRef != null || textRef != null) {
+                    jdbcTemplate.update("UPDATE page SET html_ref = ?, text_ref = ? WHERE id = ?",
+                            htmlRef, textRef, lastId);
+                    migrated++;
+                }
+            }
+        }
+        log.info("Содержимое перенесено в хранилище для страниц: {}", migrated);
+
+        if (hasHtml) {
+            jdbcTemplate.execute("ALTER TABLE page DROP COLUMN content_html");
+        }
+        if (hasText) {
+            jdbcTemplate.execute("ALTER TABLE page DROP COLUMN content_text");
+        }
+    }
+
+    private boolean hasColumn(String table, String column) {
+        Integer columns = jdbcTemplate.queryForObject(
+                "SELECT COUNT(*) FROM information_schema.columns " +
+                        "WHERE table_schema = DATABASE() AND table_name = ? AND column_name = ?",
+                Integer.class, table, column);
+        return columns != null && columns > 0;
+    }
+
     private ConfigSite createConfigSite(String name, String url) {
         ConfigSite site = new ConfigSite();
         site.setName(name);
@@ -0,0 +1,136 @@
+package searchengine.services;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import searchengine.config.ConfigSearch;
+import searchengine.models.SiteEntity;
+import searchengine.repository.PageRepository;
+import searchengine.repository.SiteRepository;
+import searchengine.search.SiteIndex;
+
+import javax.annotation.PreDestroy;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Инвертированные индексы активных поколений сайтов в памяти.
+ * После старта индексы загружаются из lemma и index_table в фоне,
+ * при завершении индексации сайта новое поколение подменяет прежнее целиком.
+ * Пока индекса сайта нет или он отстал от активного поколения, поиск идёт по БД
+ */
+@Slf4j
+@Service
+public class InvertedIndexService {
+    private final ConfigSearch configSearch;
+    private final SiteRepository siteRepository;
+    private final PageRepository pageRepository;
+    private final JdbcTemplate streamingTemplate;
+
+    private final Map<Integer, SiteIndex> indexes = new ConcurrentHashMap<>();
+    private final ExecutorService loader = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "InvertedIndexLoader");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    public InvertedIndexService(ConfigSearch configSearch,
+                                SiteRepository siteRepository,
+                                PageRepository pageRepository,
+                                JdbcTemplate jdbcTemplate) {
+        this.configSearch = configSearch;
+        this.siteRepository = siteRepository;
+        this.pageRepository = pageRepository;
+        // Драйвер MySQL отдаёт строки потоком только при fetchSize = Integer.MIN_VALUE
+        this.streamingTemplate = new JdbcTemplate(jdbcTemplate.getDataSource());
+        this.streamingTemplate.setFetchSize(Integer.MIN_VALUE);
+    }
+
+    public boolean isEnabled() {
+        return "memory".equalsIgnoreCase(configSearch.getMode());
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void loadAll() {
+        if (!isEnabled()) {
+            return;
+        }
+        loader.execute(() -> {
+            for (SiteEntity site : siteRepository.findByDeletedFalse()) {
+                try {
+                    long start = System.currentTimeMillis();
+                    SiteIndex index = load(site);
+                    publish(index);
+                    log.info("Индекс сайта {} загружен в память: {} терминов, {} КБ за {} мс", site.getUrl(),
+                            index.termCount(), index.sizeInBytes() / 1024, System.currentTimeMillis() - start);
+                } catch (RuntimeException e) {
+                    log.warn("Не удалось загрузить индекс сайта {} в память: {}", site.getUrl(), e.getMessage());
+                }
+            }
+        });
+    }
+
+    /** Индекс активного поколения сайта или null, если его ещё нет в памяти */
+    public SiteIndex get(SiteEntity site) {
+        if (!isEnabled()) {
+            return null;
+        }
+        SiteIndex index = indexes.get(site.getId());
+        return index != null && index.generation() == site.getActiveGeneration() ? index : null;
+    }
+
+    /** Заменить индекс сайта; индекс более старого поколения не вытесняет новый */
+    public void publish(SiteIndex index) {
+        indexes.merge(index.siteId(), index,
+                (current, candidate) -> candidate.generation() >= current.generation() ? candidate : current);
+    }
+
+    public void remove(int siteId) {
+        indexes.remove(siteId);
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        long terms = 0;
+        long bytes = 0;
+        for (SiteIndex index : indexes.values()) {
+            terms += index.termCount();
+            bytes += index.sizeInBytes();
+        }
+        stats.put("enabled", isEnabled());
+        stats.put("sites", indexes.size());
+        stats.put("terms", terms);
+        stats.put("bytes", bytes);
+        return stats;
+    }
+
+    // Чтение поколения сайта потоком, без загрузки сущностей JPA
+    private SiteIndex load(SiteEntity site) {
+        int generation = site.getActiveGeneration();
+        int totalPages = (int) pageRepository.countBySiteAndGeneration(site, generation);
+        SiteIndex.Builder builder = SiteIndex.builder(site.getId(), generation, totalPages);
+
+        streamingTemplate.query(
+                "SELECT term_id, frequency, stop_lemma FROM lemma WHERE site_id = ? AND generation = ?",
+                rs -> {
+                    builder.term(rs.getInt(1), rs.getInt(2), rs.getBoolean(3));
+                }, site.getId(), generation);
+        streamingTemplate.query(
+                "SELECT l.term_id, i.page_id, i.rank_count FROM index_table i " +
+                        "JOIN lemma l ON l.id = i.lemma_id WHERE l.site_id = ? AND l.generation = ?",
+                rs -> {
+                    builder.addPosting(rs.getInt(1), rs.getInt(2), rs.getFloat(3));
+                }, site.getId(), generation);
+        return builder.build();
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        loader.shutdownNow();
+    }
+}
@@ -0,0 +1,198 @@
+package searchengine.services;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import searchengine.config.ConfigSearch;
+import searchengine.models.SiteEntity;
+import searchengine.repository.SiteRepository;
+import searchengine.utils.BloomFilter;
+import searchengine.utils.IntIntHashMap;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.*;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.stream.Stream;
+
+/**
+ * Фильтры Блума по леммам активного поколения каждого сайта.
+ * Поиск проверяет их до обращения к словарю и БД: лемма, которой точно нет
+ * на сайте, отбрасывается без запросов. Фильтры строятся индексатором при
+ * переключении поколения и сохраняются в файлы, поэтому доступны сразу после старта
+ */
+@Slf4j
+@Service
+public class LemmaFilterService {
+    private static final int MAGIC = 0x424C4D31; // "BLM1"
+    private static final String EXTENSION = ".bloom";
+
+    private final ConfigSearch configSearch;
+    private final SiteRepository siteRepository;
+    private final TermDictionaryService termDictionaryService;
+    private final JdbcTemplate jdbcTemplate;
+
+    private final Map<Integer, SiteFilter> filters = new ConcurrentHashMap<>();
+    private final ExecutorService builder = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "LemmaFilterBuilder");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private record SiteFilter(int generation, BloomFilter filter) {
+    }
+
+    public LemmaFilterService(ConfigSearch configSearch,
+                              SiteRepository siteRepository,
+                              TermDictionaryService termDictionaryService,
+                              JdbcTemplate jdbcTemplate) {
+        this.configSearch = configSearch;
+        this.siteRepository = siteRepository;
+        this.termDictionaryService = termDictionaryService;
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    @PostConstruct
+    public void init() {
+        Path dir = directory();
+        if (dir == null || !Files.isDirectory(dir)) {
+            return;
+        }
+        try (Stream<Path> files = Files.list(dir)) {
+            files.filter(path -> path.getFileName().toString().endsWith(EXTENSION)).forEach(this::read);
+        } catch (IOException e) {
+            log.warn("Не удалось прочитать фильтры лемм из {}: {}", dir, e.getMessage());
+        }
+    }
+
+    /** Сайты без фильтра текущего поколения (первый запуск, файл потерян) получают его в фоне */
+    @EventListener(ApplicationReadyEvent.class)
+    public void buildMissing() {
+        builder.execute(() -> {
+            for (SiteEntity site : siteRepository.findByDeletedFalse()) {
+                SiteFilter current = filters.get(site.getId());
+                if (current != null && current.generation() == site.getActiveGeneration()) {
+                    continue;
+                }
+                try {
+                    List<String> lemmas = new ArrayList<>();
+                    jdbcTemplate.query("SELECT t.lemma FROM lemma l JOIN term t ON t.id = l.term_id " +
+                                    "WHERE l.site_id = ? AND l.generation = ?",
+                            rs -> {
+                                lemmas.add(rs.getString(1));
+                            }, site.getId(), site.getActiveGeneration());
+                    publish(site.getId(), site.getActiveGeneration(), lemmas);
+                } catch (RuntimeException e) {
+                    log.warn("Не удалось построить фильтр лемм сайта {}: {}", site.getUrl(), e.getMessage());
+                }
+            }
+        });
+    }
+
+    /**
+     * Может ли лемма встречаться на сайте. Без фильтра текущего поколения
+     * ответ всегда «может», то есть поиск идёт как без фильтров
+     */
+    public boolean mightContain(SiteEntity site, String lemma) {
+        SiteFilter siteFilter = filters.get(site.getId());
+        if (siteFilter == null || siteFilter.generation() != site.getActiveGeneration()) {
+            return true;
+        }
+        return siteFilter.filter().mightContain(lemma);
+    }
+
+    /** Индексатор переключил сайт на новое поколение: df-таблица содержит все его термины */
+    public void onGenerationCommitted(SiteEntity site, IntIntHashMap siteLemmas) {
+        List<String> lemmas = new ArrayList<>(siteLemmas.size());
+        siteLemmas.forEach((termId, documentFrequency) -> lemmas.add(termDictionaryService.lemmaOf(termId)));
+        publish(site.getId(), site.getActiveGeneration(), lemmas);
+    }
+
+    public void onSiteRemoved(int siteId) {
+        filters.remove(siteId);
+        Path dir = directory();
+        if (dir != null) {
+            try {
+                Files.deleteIfExists(dir.resolve(siteId + EXTENSION));
+            } catch (IOException e) {
+                log.warn("Не удалось удалить фильтр лемм сайта {}: {}", siteId, e.getMessage());
+            }
+        }
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        long bytes = 0;
+        for (SiteFilter siteFilter : filters.values()) {
+            bytes += siteFilter.filter().sizeInBytes();
+        }
+        stats.put("sites", filters.size());
+        stats.put("bytes", bytes);
+        return stats;
+    }
+
+    private void publish(int siteId, int generation, List<String> lemmas) {
+        BloomFilter filter = BloomFilter.create(lemmas.size(), configSearch.getFilterFalsePositiveRate());
+        for (String lemma : lemmas) {
+            if (lemma != null) {
+                filter.put(lemma);
+            }
+        }
+        // Фильтр более старого поколения (фоновая сборка) не вытесняет построенный индексатором
+        SiteFilter candidate = new SiteFilter(generation, filter);
+        if (filters.merge(siteId, candidate,
+                (current, built) -> built.generation() >= current.generation() ? built : current) == candidate) {
+            write(siteId, generation, filter);
+        }
+    }
+
+    private void read(Path file) {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            if (in.readInt() != MAGIC) {
+                return;
+            }
+            int siteId = in.readInt();
+            int generation = in.readInt();
+            filters.put(siteId, new SiteFilter(generation, BloomFilter.readFrom(in)));
+        } catch (IOException e) {
+            log.warn("Фильтр лемм {} повреждён и будет построен заново: {}", file, e.getMessage());
+        }
+    }
+
+    private void write(int siteId, int generation, BloomFilter filter) {
+        Path dir = directory();
+        if (dir == null) {
+            return;
+        }
+        Path file = dir.resolve(siteId + EXTENSION);
+        Path temp = dir.resolve(siteId + EXTENSION + ".tmp");
+        try {
+            Files.createDirectories(dir);
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp)))) {
+                out.writeInt(MAGIC);
+                out.writeInt(siteId);
+                out.writeInt(generation);
+                filter.writeTo(out);
+            }
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            log.warn("Не удалось сохранить фильтр лемм сайта {}: {}", siteId, e.getMessage());
+        }
+    }
+
+    private Path directory() {
+        String path = configSearch.getFilterPath();
+        return path == null || path.isBlank() ? null : Paths.get(path);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        builder.shutdownNow();
+    }
+}
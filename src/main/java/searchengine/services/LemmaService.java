@@ -1,68 +1,374 @@
 package searchengine.services;
 
 import lombok.RequiredArgsConstructor;
-import org.apache.lucene.morphology.LuceneMorphology;
-import org.apache.lucene.morphology.russian.RussianLuceneMorphology;
-import org.apache.lucene.morphology.english.EnglishLuceneMorphology;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.lucene.morphology.LetterDecoderEncoder;
+import org.apache.lucene.morphology.Morphology;
+import org.apache.lucene.morphology.english.EnglishLetterDecoderEncoder;
+import org.apache.lucene.morphology.russian.RussianLetterDecoderEncoder;
+import org.springframework.boot.availability.AvailabilityChangeEvent;
+import org.springframework.boot.availability.ReadinessState;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.context.event.EventListener;
 import org.springframework.stereotype.Service;
-import searchengine.models.*;
+import searchengine.config.ConfigLemma;
+import searchengine.repository.TermRepository;
+import searchengine.search.PagePositions;
+import searchengine.utils.MorphologySnapshot;
+import searchengine.utils.ObjectIntHashMap;
+import searchengine.utils.SegmentedLruCache;
+import searchengine.utils.TextTokenizer;
 
 import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.lang.management.ManagementFactory;
+import java.nio.CharBuffer;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.*;
+import java.util.concurrent.*;
 
+/**
+ * Лемматизация текстов.
+ * Анализаторы морфологии после загрузки словарей только читают свои массивы
+ * (правила, окончания, грамматическую информацию) и не хранят состояния между вызовами,
+ * поэтому один экземпляр каждого языка безопасно используется всеми потоками индексации
+ * и поиска без блокировок. Ссылки на анализаторы volatile, чтобы полностью
+ * загруженный словарь был виден любому потоку.
+ * Словари загружаются параллельно в фоне; пока они не готовы, приложение сообщает
+ * о неготовности (ReadinessState), а обращение к незагруженному языку ждёт его загрузки
+ */
+@Slf4j
 @Service
 @RequiredArgsConstructor
 public class LemmaService {
-    private LuceneMorphology russianMorphology; // анализатор (инициализируются в @PostConstruct)
-    private LuceneMorphology englishMorphology; // анализатор (инициализируются в @PostConstruct)
+    private static final String NO_LEMMA = ""; // Отметка в кэше: служебное или неизвестное слово
+    private static final int CHUNK_SIZE = 64 * 1024; // Большие тексты делятся на части примерно такого размера
+
+    private final ConfigLemma configLemma;
+    private final TermRepository termRepository;
+    private final ApplicationEventPublisher eventPublisher;
+
+    private volatile Morphology russianMorphology; // анализатор (загружается в фоне после @PostConstruct)
+    private volatile Morphology englishMorphology; // анализатор (загружается в фоне после @PostConstruct)
+    private volatile SegmentedLruCache<String, String> lemmaCache; // словоформа -> лемма, общий для индексации и поиска
+    private volatile ForkJoinPool lemmatizePool; // Пул пакетной лемматизации, создаётся при первом вызове lemmatizeAll
+
+    private CompletableFuture<Morphology> russianLoading;
+    private CompletableFuture<Morphology> englishLoading;
+    private CompletableFuture<Void> dictionariesLoading;
+    private volatile boolean dictionariesReady; // Оба словаря загружены
+    private final Map<String, Object> startupStats = new ConcurrentHashMap<>(); // Время загрузки словарей
+    private final Object readinessLock = new Object();
+    private final Object poolLock = new Object();
 
     @PostConstruct
-    public void init() throws Exception { // После создания бина Spring вызывает @PostConstruct метод
-        this.russianMorphology = new RussianLuceneMorphology(); // Создаются экземпляры морфологических анализаторов
-        this.englishMorphology = new EnglishLuceneMorphology(); // Создаются экземпляры морфологических анализаторов
+    public void init() { // После создания бина Spring вызывает @PostConstruct метод
+        this.lemmaCache = new SegmentedLruCache<>(configLemma.getCacheSize());
+
+        // Словари загружаются параллельно, создание бина их не ждёт
+        ExecutorService loader = Executors.newFixedThreadPool(2, runnable -> {
+            Thread thread = new Thread(runnable, "MorphologyLoader");
+            thread.setDaemon(true);
+            return thread;
+        });
+        russianLoading = CompletableFuture.supplyAsync(() -> loadMorphology("russian",
+                "/org/apache/lucene/morphology/russian/morph.info", new RussianLetterDecoderEncoder()), loader);
+        englishLoading = CompletableFuture.supplyAsync(() -> loadMorphology("english",
+                "/org/apache/lucene/morphology/english/morph.info", new EnglishLetterDecoderEncoder()), loader);
+        loader.shutdown();
+
+        dictionariesLoading = CompletableFuture.allOf(russianLoading, englishLoading)
+                .thenRun(() -> {
+                    russianMorphology = russianLoading.join();
+                    englishMorphology = englishLoading.join();
+                    startupStats.put("dictionariesReadyAtMs", ManagementFactory.getRuntimeMXBean().getUptime());
+                    synchronized (readinessLock) {
+                        // Флаг выставляется до публикации: onReadinessChange не откатит готовность
+                        dictionariesReady = true;
+                        AvailabilityChangeEvent.publish(eventPublisher, this, ReadinessState.ACCEPTING_TRAFFIC);
+                    }
+                });
+        dictionariesLoading.exceptionally(error -> {
+            log.error("Не удалось загрузить словари морфологии: {}", error.getMessage());
+            return null;
+        });
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        synchronized (poolLock) {
+            if (lemmatizePool != null) {
+                lemmatizePool.shutdownNow();
+            }
+        }
+    }
+
+    // Spring Boot объявляет приложение готовым после старта контекста; пока словари не загружены, откатываем
+    @EventListener
+    public void onReadinessChange(AvailabilityChangeEvent<ReadinessState> event) {
+        synchronized (readinessLock) {
+            if (event.getState() == ReadinessState.ACCEPTING_TRAFFIC && !isReady()) {
+                AvailabilityChangeEvent.publish(eventPublisher, this, ReadinessState.REFUSING_TRAFFIC);
+            }
+        }
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void onApplicationReady() {
+        startupStats.put("applicationReadyAtMs", ManagementFactory.getRuntimeMXBean().getUptime());
+        dictionariesLoading.thenRunAsync(this::warmUpCache);
+    }
+
+    /** Загружены ли словари обоих языков */
+    public boolean isReady() {
+        return dictionariesReady;
+    }
+
+    /** Время загрузки словарей и готовности приложения (мс от старта JVM) */
+    public Map<String, Object> getStartupStats() {
+        Map<String, Object> stats = new TreeMap<>(startupStats);
+        stats.put("ready", isReady());
+        return stats;
+    }
+
+    // Прогрев кэша самыми частыми леммами проиндексированных сайтов
+    private void warmUpCache() {
+        if (configLemma.getWarmUp() <= 0) {
+            return;
+        }
+        try {
+            List<String> lemmas = termRepository.findMostFrequentLemmas(configLemma.getWarmUp());
+            for (String lemma : lemmas) {
+                char first = lemma.charAt(0);
+                lemmatize(lemma, first < 'a' || first > 'z');
+            }
+            //log.info("Кэш лемматизации прогрет: {} лемм", lemmas.size());
+        } catch (Exception e) {
+            log.warn("Не удалось прогреть кэш лемматизации: {}", e.getMessage());
+        }
+    }
+
+    private Morphology loadMorphology(String language, String resource, LetterDecoderEncoder decoder) {
+        long start = System.nanoTime();
+        try {
+            Path snapshot = configLemma.getSnapshotPath() == null || configLemma.getSnapshotPath().isEmpty()
+                    ? null : Paths.get(configLemma.getSnapshotPath(), language + ".bin");
+            MorphologySnapshot.Loaded loaded = MorphologySnapshot.load(resource, decoder, snapshot);
+            startupStats.put(language + "LoadMs", (System.nanoTime() - start) / 1_000_000);
+            startupStats.put(language + "Source", loaded.source());
+            return loaded.morphology();
+        } catch (Exception e) {
+            throw new CompletionException("Ошибка загрузки словаря " + language, e);
+        }
+    }
+
+    // Анализатор языка; если словарь ещё загружается, ждём его
+    private Morphology morphology(boolean cyrillic) {
+        Morphology morphology = cyrillic ? russianMorphology : englishMorphology;
+        if (morphology == null) {
+            morphology = (cyrillic ? russianLoading : englishLoading).join();
+        }
+        return morphology;
     }
 
     public Map<String, Integer> extractLemmas(String text) {
         Map<String, Integer> lemmas = new HashMap<>(); // HashMap для хранения лемм и их частот
-        String cleanText = cleanHtml(text); // Очищается HTML из текста (удаляются теги, entities)
-        String[] words = cleanText.toLowerCase().split("\\s+"); // Текст приводится к нижнему регистру и разбивается на слова по пробелам
-
-        // Цикл обработки слов
-        for (String word : words) {
-            if (word.length() < 2 || isStopWord(word)) continue; // Пропускаем короткие слова (< 2 символов) и стоп-слова
-
-            boolean isRussian = word.matches("[а-яё]+"); // только русские буквы
-            boolean isEnglish = word.matches("[a-z]+"); // только английские буквы
-            if (!isRussian && !isEnglish) continue; // Пропускаем слова не подходящие ни под один язык
-
-            try { // Процесс лемматизации
-                LuceneMorphology morphology = isRussian ? russianMorphology : englishMorphology; // Выбираем анализатор по языку слова
-                List<String> normalForms = morphology.getNormalForms(word);
-                if (!normalForms.isEmpty() && !isFunctionalWord(morphology, word)) { // Проверяем что слово не служебное (не предлог/союз и т.д.)
-                    String lemma = normalForms.get(0);
-                    lemmas.put(lemma, lemmas.getOrDefault(lemma, 0) + 1); // Берем первую нормальную форму и увеличиваем счетчик в Map
+        countLemmas((CharSequence) text).forEach(lemmas::put);
+        return lemmas;
+    }
+
+    /** Частоты лемм текста в примитивной таблице (для индексации, без упаковки счётчиков) */
+    public ObjectIntHashMap<String> countLemmas(String text) {
+        return countLemmas(text, null);
+    }
+
+    /** Частоты лемм текста; если передан builder, в него собираются позиции и границы слов */
+    public ObjectIntHashMap<String> countLemmas(String text, PagePositions.Builder positions) {
+        if (positions == null) {
+            return countLemmas((CharSequence) text);
+        }
+        ObjectIntHashMap<String> lemmas = new ObjectIntHashMap<>(text.length() / 64);
+        int[] position = {0}; // Номер слова считается по всем словам токенизатора, в том числе служебным
+        TextTokenizer.tokenize(text, (buffer, length, cyrillic, start, end) -> {
+            String lemma = lemmatize(new String(buffer, 0, length), cyrillic);
+            if (lemma != null) {
+                lemmas.addTo(lemma, 1);
+                positions.add(lemma, position[0], start, end);
+            }
+            position[0]++;
+        });
+        return lemmas;
+    }
+
+    /** Получатель слов текста: слово в нижнем регистре, лемма (null для служебных) и границы слова */
+    @FunctionalInterface
+    public interface WordConsumer {
+        void accept(String word, String lemma, int start, int end);
+    }
+
+    /** Пройти по словам текста по порядку (для разбора поисковых запросов) */
+    public void forEachWord(String text, WordConsumer consumer) {
+        TextTokenizer.tokenize(text, (buffer, length, cyrillic, start, end) -> {
+            String word = new String(buffer, 0, length);
+            consumer.accept(word, lemmatize(word, cyrillic), start, end);
+        });
+    }
+
+    /**
+     * Частоты лемм для набора текстов (результаты в том же порядке).
+     * Тексты обрабатываются параллельно, большие тексты дополнительно делятся на части
+     */
+    public List<ObjectIntHashMap<String>> lemmatizeAll(List<String> texts) {
+        @SuppressWarnings({"unchecked", "rawtypes"})
+        ObjectIntHashMap<String>[] results = new ObjectIntHashMap[texts.size()];
+        lemmatizePool().invoke(new DocumentsTask(texts, results, 0, texts.size()));
+        return Arrays.asList(results);
+    }
+
+    private ForkJoinPool lemmatizePool() {
+        ForkJoinPool pool = lemmatizePool;
+        if (pool == null) {
+            synchronized (poolLock) {
+                pool = lemmatizePool;
+                if (pool == null) {
+                    pool = new ForkJoinPool();
+                    lemmatizePool = pool;
                 }
-            } catch (Exception e) {
-                // Ignore
             }
         }
+        return pool;
+    }
+
+    private ObjectIntHashMap<String> countLemmas(CharSequence text) {
+        ObjectIntHashMap<String> lemmas = new ObjectIntHashMap<>(text.length() / 64); // Примерно одна новая лемма на 64 символа
+
+        // Токенизатор за один проход пропускает HTML, отбрасывает короткие слова и стоп-слова
+        // и отдаёт слова в нижнем регистре; строка создаётся только для поиска в кэше
+        TextTokenizer.tokenize(text, (buffer, length, cyrillic, start, end) -> {
+            String lemma = lemmatize(new String(buffer, 0, length), cyrillic);
+            if (lemma != null) {
+                lemmas.addTo(lemma, 1); // Увеличиваем счетчик леммы
+            }
+        });
         return lemmas;
     }
 
-    // очистка Html
-    private String cleanHtml(String html) {
-        return html.replaceAll("<[^>]+>", " ") // удаляет HTML теги
-                .replaceAll("&[^;]+;", " ") // удаляет HTML entities (  и т.д.)
-                .replaceAll("[^a-zA-Zа-яёА-ЯЁ\\s]", " ") // оставляет только буквы и пробелы
-                .replaceAll("\\s+", " ") // заменяет множественные пробелы на один
-                .trim(); // обрезает пробелы по краям
+    /** Лемма слова в нижнем регистре или null, если слово служебное или неизвестно морфологии */
+    public String lemmatize(String word, boolean cyrillic) {
+        String lemma = lemmaCache.get(word, w -> analyze(w, cyrillic));
+        return lemma.isEmpty() ? null : lemma;
+    }
+
+    /** Статистика кэша лемматизации */
+    public Map<String, Object> getCacheStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("size", lemmaCache.size());
+        stats.put("hits", lemmaCache.hitCount());
+        stats.put("misses", lemmaCache.missCount());
+        stats.put("evictions", lemmaCache.evictionCount());
+        stats.put("hitRate", lemmaCache.hitRate());
+        return stats;
+    }
+
+    // Граница части текста: перед тегом или пробелом, чтобы не разрезать слово, тег или сущность
+    private static int findChunkBoundary(String text, int from, int to) {
+        int limit = Math.min(text.length(), from + CHUNK_SIZE / 4);
+        for (int i = from; i < limit; i++) {
+            if (text.charAt(i) == '<') {
+                return i;
+            }
+        }
+        for (int i = from; i < to; i++) {
+            if (Character.isWhitespace(text.charAt(i))) {
+                return i;
+            }
+        }
+        return to;
+    }
+
+    // Параллельная обработка диапазона документов
+    private class DocumentsTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final List<String> texts;
+        private final ObjectIntHashMap<String>[] results;
+        private final int from;
+        private final int to;
+
+        private DocumentsTask(List<String> texts, ObjectIntHashMap<String>[] results, int from, int to) {
+            this.texts = texts;
+            this.results = results;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from > 1) {
+                int middle = (from + to) >>> 1;
+                invokeAll(new DocumentsTask(texts, results, from, middle),
+                        new DocumentsTask(texts, results, middle, to));
+                return;
+            }
+            if (from < to) {
+                String text = texts.get(from);
+                results[from] = text == null ? new ObjectIntHashMap<>()
+                        : new ChunkTask(text, 0, text.length()).invoke();
+            }
+        }
+    }
+
+    // Параллельная обработка частей одного большого текста, частоты лемм частей суммируются
+    private class ChunkTask extends RecursiveTask<ObjectIntHashMap<String>> {
+        private static final long serialVersionUID = 1L;
+
+        private final String text;
+        private final int from;
+        private final int to;
+
+        private ChunkTask(String text, int from, int to) {
+            this.text = text;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected ObjectIntHashMap<String> compute() {
+            if (to - from > CHUNK_SIZE * 2) {
+                int middle = findChunkBoundary(text, (from + to) >>> 1, to);
+                if (middle < to) {
+                    ChunkTask right = new ChunkTask(text, middle, to);
+                    right.fork();
+                    ObjectIntHashMap<String> lemmas = new ChunkTask(text, from, middle).compute();
+                    right.join().forEach(lemmas::addTo);
+                    return lemmas;
+                }
+            }
+            return countLemmas(CharBuffer.wrap(text, from, to));
+        }
+    }
+
+    // Обращение к морфологии при промахе кэша
+    private String analyze(String word, boolean cyrillic) {
+        Morphology morphology = morphology(cyrillic); // Выбираем анализатор по языку слова (ошибка загрузки не кэшируется)
+        try { // Процесс лемматизации
+            List<String> normalForms = morphology.getNormalForms(word);
+            if (!normalForms.isEmpty() && !isFunctionalWord(morphology, word, cyrillic)) { // Проверяем что слово не служебное (не предлог/союз и т.д.)
+                return normalForms.get(0); // Берем первую нормальную форму
+            }
+        } catch (Exception e) {
+            // Ignore
+        }
+        return NO_LEMMA;
     }
 
     // Определение служебных слов
-    private boolean isFunctionalWord(LuceneMorphology morphology, String word) {
+    private boolean isFunctionalWord(Morphology morphology, String word, boolean cyrillic) {
         try {
             String info = morphology.getMorphInfo(word).toString().toUpperCase();
-            if (morphology instanceof RussianLuceneMorphology) {
+            if (cyrillic) {
                 return info.contains("МЕЖД") || info.contains("ПРЕДЛ") || info.contains("СОЮЗ") ||
                         info.contains("МС") || info.contains("ЧАСТ") || info.contains("МЕСТОИМ");
             } else {
@@ -73,24 +379,4 @@ public class LemmaService {
             return false;
         }
     }
-
-    // список стоп слов для обоих языков
-    private boolean isStopWord(String word) {
-        Set<String> stopWords = new HashSet<>(Arrays.asList(
-                // Русские стоп-слова (50+)
-                "и", "в", "во", "не", "что", "он", "на", "я", "с", "со", "как", "а", "то",
-                "все", "она", "так", "его", "но", "да", "ты", "к", "у", "же", "вы", "за",
-                "бы", "по", "только", "ее", "мне", "было", "вот", "от", "меня", "еще", "нет",
-                "о", "из", "ему", "теперь", "когда", "даже", "ну", "ли", "если", "уже",
-                "или", "ни", "быть", "был", "него", "до", "вас", "нибудь", "опять", "уж",
-
-                // Английские стоп-слова (40+)
-                "a", "an", "the", "and", "or", "but", "in", "on", "at", "to", "for", "of",
-                "with", "by", "from", "up", "about", "into", "through", "during", "before",
-                "after", "above", "below", "between", "among", "is", "are", "was", "were",
-                "be", "been", "being", "have", "has", "had", "do", "does", "did", "will",
-                "would", "shall", "should", "may", "might", "must", "can", "could"
-        ));
-        return stopWords.contains(word);
-    }
 }
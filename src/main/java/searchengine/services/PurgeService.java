@@ -0,0 +1,220 @@
+package searchengine.services;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+import searchengine.config.ConfigPurge;
+import searchengine.dto.purge.PurgeProgress;
+import searchengine.models.SiteEntity;
+import searchengine.repository.IndexRepository;
+import searchengine.repository.LemmaRepository;
+import searchengine.repository.PageRepository;
+import searchengine.repository.SiteRepository;
+import searchengine.storage.ContentStore;
+
+import javax.annotation.PreDestroy;
+import java.util.*;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Фоновое удаление данных сайта небольшими порциями.
+ * Каждая порция удаляется в отдельной короткой транзакции, поэтому блокировки
+ * не удерживаются долго и не мешают индексации других сайтов
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class PurgeService {
+    private static final int HISTORY_SIZE = 50;
+    private static final int PAGE_CHUNK_SIZE = 100; // Страниц в порции (у каждой сотни записей индекса)
+
+    private final SiteRepository siteRepository;
+    private final PageRepository pageRepository;
+    private final LemmaRepository lemmaRepository;
+    private final IndexRepository indexRepository;
+    private final TransactionTemplate transactionTemplate;
+    private final ConfigPurge configPurge;
+    private final ContentStore contentStore;
+
+    // Удаления выполняются по одному, чтобы ограничить нагрузку на БД
+    private final ExecutorService purgeExecutor = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "Purge");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final Deque<PurgeTask> tasks = new ConcurrentLinkedDeque<>();
+
+    /** Удалить в фоне одно поколение индекса сайта */
+    public void purgeGeneration(SiteEntity siteEntity, int generation) {
+        PurgeTask task = register(new PurgeTask(siteEntity.getUrl(), generation));
+        Integer siteId = siteEntity.getId();
+        purgeExecutor.execute(() -> run(task, () -> purgeGenerationChunked(task, siteId, generation)));
+    }
+
+    /**
+     * Удалить сайт целиком. Сайт сразу помечается удалённым и исключается из поиска,
+     * данные всех поколений и сама запись сайта удаляются в фоне
+     */
+    public void purgeSite(SiteEntity siteEntity) {
+        transactionTemplate.execute(status -> {
+            siteRepository.markDeleted(siteEntity.getId());
+            return null;
+        });
+        siteEntity.setDeleted(true);
+
+        PurgeTask task = register(new PurgeTask(siteEntity.getUrl(), null));
+        purgeExecutor.execute(() -> run(task, () -> {
+            Set<Integer> generations = new TreeSet<>();
+            generations.add(siteEntity.getActiveGeneration());
+            generations.addAll(pageRepository.findOtherGenerations(siteEntity, siteEntity.getActiveGeneration()));
+            generations.addAll(lemmaRepository.findOtherGenerations(siteEntity, siteEntity.getActiveGeneration()));
+
+            for (Integer generation : generations) {
+                purgeGenerationChunked(task, siteEntity.getId(), generation);
+            }
+
+            transactionTemplate.execute(status -> {
+                siteRepository.deleteById(siteEntity.getId());
+                return null;
+            });
+            contentStore.dropSiteIfEmpty(siteEntity.getId());
+        }));
+    }
+
+    /** Прогресс текущих и недавно завершённых удалений */
+    public List<PurgeProgress> getProgress() {
+        List<PurgeProgress> result = new ArrayList<>();
+        for (PurgeTask task : tasks) {
+            result.add(task.toProgress());
+        }
+        return result;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        purgeExecutor.shutdownNow();
+    }
+
+    private void purgeGenerationChunked(PurgeTask task, Integer siteId, int generation) throws InterruptedException {
+        int chunkSize = Math.max(1, configPurge.getChunkSize());
+
+        // Страницы и их записи индекса, порциями по возрастанию id
+        int afterId = 0;
+        while (true) {
+            List<Integer> pageIds = pageRepository.findIdChunk(siteId, generation, afterId,
+                    Math.min(PAGE_CHUNK_SIZE, chunkSize));
+            if (pageIds.isEmpty()) break;
+
+            // Записи индекса этих страниц удаляем ограниченными порциями
+            int deleted;
+            do {
+                deleted = inTransaction(() -> indexRepository.deleteChunkByPageIds(pageIds, chunkSize));
+                task.deletedIndexes.addAndGet(deleted);
+                throttle();
+            } while (deleted >= chunkSize);
+
+            task.deletedPages.addAndGet(inTransaction(() -> pageRepository.deleteByIds(pageIds)));
+            afterId = pageIds.get(pageIds.size() - 1);
+            throttle();
+        }
+
+        // Леммы поколения (записей индекса на них уже не осталось)
+        afterId = 0;
+        while (true) {
+            List<Integer> lemmaIds = lemmaRepository.findIdChunk(siteId, generation, afterId, chunkSize);
+            if (lemmaIds.isEmpty()) break;
+
+            task.deletedLemmas.addAndGet(inTransaction(() -> lemmaRepository.deleteByIds(lemmaIds)));
+            afterId = lemmaIds.get(lemmaIds.size() - 1);
+            throttle();
+        }
+
+        // Сегменты с содержимым страниц поколения
+        contentStore.dropGeneration(siteId, generation);
+    }
+
+    private int inTransaction(ChunkDelete delete) {
+        Integer deleted = transactionTemplate.execute(status -> delete.run());
+        return deleted != null ? deleted : 0;
+    }
+
+    private void throttle() throws InterruptedException {
+        if (configPurge.getPause() > 0) {
+            Thread.sleep(configPurge.getPause());
+        }
+    }
+
+    private void run(PurgeTask task, PurgeAction action) {
+        task.state = "RUNNING";
+        task.startTime = System.currentTimeMillis();
+        try {
+            action.run();
+            task.state = "DONE";
+            //log.info("Удаление {} завершено", task.site);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            task.state = "INTERRUPTED";
+        } catch (Exception e) {
+            log.error("Ошибка при удалении данных сайта {}: {}", task.site, e.getMessage());
+            task.state = "FAILED";
+            task.error = e.getMessage();
+        } finally {
+            task.finishTime = System.currentTimeMillis();
+        }
+    }
+
+    private PurgeTask register(PurgeTask task) {
+        tasks.addFirst(task);
+        // Храним только последние задачи, незавершённые не вытесняются
+        if (tasks.size() > HISTORY_SIZE) {
+            tasks.stream()
+                    .skip(HISTORY_SIZE)
+                    .filter(t -> t.finishTime > 0)
+                    .forEach(tasks::remove);
+        }
+        return task;
+    }
+
+    private interface ChunkDelete {
+        int run();
+    }
+
+    private interface PurgeAction {
+        void run() throws InterruptedException;
+    }
+
+    private static class PurgeTask {
+        private final String site;
+        private final Integer generation;
+        private final AtomicLong deletedIndexes = new AtomicLong();
+        private final AtomicLong deletedLemmas = new AtomicLong();
+        private final AtomicLong deletedPages = new AtomicLong();
+        private volatile String state = "QUEUED";
+        private volatile long startTime;
+        private volatile long finishTime;
+        private volatile String error;
+
+        private PurgeTask(String site, Integer generation) {
+            this.site = site;
+            this.generation = generation;
+        }
+
+        private PurgeProgress toProgress() {
+            PurgeProgress progress = new PurgeProgress();
+            progress.setSite(site);
+            progress.setGeneration(generation);
+            progress.setState(state);
+            progress.setDeletedIndexes(deletedIndexes.get());
+            progress.setDeletedLemmas(deletedLemmas.get());
+            progress.setDeletedPages(deletedPages.get());
+            progress.setStartTime(startTime);
+            progress.setFinishTime(finishTime);
+            progress.setError(error);
+            return progress;
+        }
+    }
+}
@@ -0,0 +1,144 @@
+package searchengine.services;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Service;
+import searchengine.config.ConfigLemma;
+import searchengine.search.AnalyzedQuery;
+import searchengine.search.AnalyzedQuery.PhraseQuery;
+import searchengine.search.QueryNode;
+import searchengine.utils.SegmentedLruCache;
+
+import javax.annotation.PostConstruct;
+import java.util.*;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Разбор поисковых запросов. Запрос лемматизируется один раз, результат
+ * ({@link AnalyzedQuery}) кэшируется по нормализованному тексту и передаётся
+ * через все этапы поиска, включая построение сниппетов.
+ * Синтаксис: слова через пробел обязательны, {@code OR} (или {@code |}) между
+ * словами - любое из них, {@code -слово} - исключить, {@code "фраза"~N} - фраза,
+ * {@code site:хост} - искать только на сайте
+ */
+@Service
+@RequiredArgsConstructor
+public class QueryAnalyzerService {
+    private static final Pattern SPACES = Pattern.compile("\\s+");
+    // Части запроса: [-]"фраза"~N | site:хост | ИЛИ | [-]слово
+    private static final Pattern TOKEN_PATTERN = Pattern.compile(
+            "(-)?\"([^\"]+)\"(?:~(\\d+))?|site:(\\S+)|(\\|)|(-)?([^\\s\"|]+)");
+    // Оператор ИЛИ пишется заглавными, чтобы не путать со словом; после нормализации это |
+    private static final Pattern OR_OPERATOR = Pattern.compile("(?<=\\s)OR(?=\\s)");
+
+    private final LemmaService lemmaService;
+    private final ConfigLemma configLemma;
+
+    private SegmentedLruCache<String, AnalyzedQuery> queryCache;
+
+    @PostConstruct
+    public void init() {
+        queryCache = new SegmentedLruCache<>(configLemma.getQueryCacheSize());
+    }
+
+    public AnalyzedQuery analyze(String query) {
+        String normalized = normalize(query);
+        return queryCache.get(normalized, this::analyzeNormalized);
+    }
+
+    /** Статистика кэша разобранных запросов */
+    public Map<String, Object> getCacheStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("size", queryCache.size());
+        stats.put("hits", queryCache.hitCount());
+        stats.put("misses", queryCache.missCount());
+        stats.put("hitRate", queryCache.hitRate());
+        return stats;
+    }
+
+    private static String normalize(String query) {
+        if (query == null) {
+            return "";
+        }
+        String spaced = SPACES.matcher(query.trim()).replaceAll(" ");
+        return OR_OPERATOR.matcher(spaced).replaceAll("|").toLowerCase();
+    }
+
+    private AnalyzedQuery analyzeNormalized(String query) {
+        Set<String> lemmas = new LinkedHashSet<>();
+        Map<String, Set<String>> surfaceForms = new LinkedHashMap<>();
+        List<QueryNode> required = new ArrayList<>();
+        List<PhraseQuery> requiredPhrases = new ArrayList<>(); // Фраза обязательной части или null
+        List<QueryNode> excluded = new ArrayList<>();
+        List<String> siteFilters = new ArrayList<>();
+        boolean orPending = false;
+
+        Matcher matcher = TOKEN_PATTERN.matcher(query);
+        while (matcher.find()) {
+            if (matcher.group(4) != null) {
+                siteFilters.add(matcher.group(4));
+                continue;
+            }
+            if (matcher.group(5) != null) {
+                orPending = !required.isEmpty();
+                continue;
+            }
+            boolean phrase = matcher.group(2) != null;
+            boolean negative = (phrase ? matcher.group(1) : matcher.group(6)) != null;
+            String text = phrase ? matcher.group(2) : matcher.group(7);
+
+            List<String> sequence = new ArrayList<>();
+            List<QueryNode> terms = new ArrayList<>();
+            lemmaService.forEachWord(text, (word, lemma, start, end) -> {
+                sequence.add(lemma);
+                if (lemma != null) {
+                    terms.add(new QueryNode.Term(lemma));
+                    if (!negative) {
+                        lemmas.add(lemma);
+                        surfaceForms.computeIfAbsent(lemma, k -> new LinkedHashSet<>()).add(word);
+                    }
+                }
+            });
+            if (terms.isEmpty()) {
+                continue;
+            }
+            QueryNode node = terms.size() == 1 ? terms.get(0) : new QueryNode.And(terms, List.of());
+            if (negative) {
+                excluded.add(node);
+                orPending = false;
+                continue;
+            }
+
+            PhraseQuery phraseQuery = null;
+            if (phrase) {
+                int slop = matcher.group(3) != null ? Integer.parseInt(matcher.group(3)) : 0;
+                phraseQuery = new PhraseQuery(sequence, slop);
+            }
+            if (orPending) {
+                // Фраза внутри ИЛИ не обязательна: проверяются только её слова
+                int last = required.size() - 1;
+                required.set(last, or(required.get(last), node));
+                requiredPhrases.set(last, null);
+                orPending = false;
+            } else {
+                required.add(node);
+                requiredPhrases.add(phraseQuery);
+            }
+        }
+
+        List<PhraseQuery> phrases = requiredPhrases.stream().filter(Objects::nonNull).toList();
+        return new AnalyzedQuery(query, lemmas, surfaceForms, phrases,
+                new QueryNode.And(required, excluded), siteFilters);
+    }
+
+    private static QueryNode or(QueryNode left, QueryNode right) {
+        List<QueryNode> alternatives = new ArrayList<>();
+        if (left instanceof QueryNode.Or or) {
+            alternatives.addAll(or.children());
+        } else {
+            alternatives.add(left);
+        }
+        alternatives.add(right);
+        return new QueryNode.Or(alternatives);
+    }
+}
@@ -3,28 +3,82 @@ package searchengine.services;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
+import searchengine.config.ConfigSearch;
 import searchengine.models.*;
 import searchengine.repository.*;
-
+import searchengine.search.AnalyzedQuery;
+import searchengine.search.BlockMaxWand;
+import searchengine.search.AnalyzedQuery.PhraseQuery;
+import searchengine.search.PagePositions;
+import searchengine.search.PositionalMatcher;
+import searchengine.search.PositionalMatcher.Phrase;
+import searchengine.search.PostingCursor;
+import searchengine.search.PostingList;
+import searchengine.search.QueryEvaluator;
+import searchengine.search.QueryEvaluator.TermSource;
+import searchengine.search.PostingIntersection;
+import searchengine.search.PostingIntersection.Matches;
+import searchengine.search.SiteIndex;
+import searchengine.search.SiteIndex.TermInfo;
+import searchengine.search.SortedArrayCursor;
+import searchengine.search.TopKCollector;
+import searchengine.storage.ContentStore;
+import searchengine.utils.SegmentedLruCache;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
 import java.util.*;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
 
 @Slf4j
 @Service
 @RequiredArgsConstructor
 public class SearchService {
-    private final LemmaService lemmaService;
+    private final QueryAnalyzerService queryAnalyzerService;
     private final SiteRepository siteRepository;
     private final PageRepository pageRepository;
     private final LemmaRepository lemmaRepository;
     private final IndexRepository indexRepository;
+    private final ContentStore contentStore;
+    private final TermDictionaryService termDictionaryService;
+    private final InvertedIndexService invertedIndexService;
+    private final CorpusStatisticsService corpusStatisticsService;
+    private final LemmaFilterService lemmaFilterService;
+    private final SnippetService snippetService;
+    private final SuggestService suggestService;
+    private final ConfigSearch configSearch;
+
+    // Готовые ответы; поколения сайтов входят в ключ, поэтому после переиндексации старые записи не находятся
+    private SegmentedLruCache<ResultKey, Map<String, Object>> resultCache;
+
+    private ExecutorService searchPool;
+
+    @PostConstruct
+    public void init() {
+        if (configSearch.getResultCacheSize() > 0) {
+            resultCache = new SegmentedLruCache<>(configSearch.getResultCacheSize());
+        }
+        // Ограниченный пул для параллельного поиска по сайтам
+        AtomicInteger threadNumber = new AtomicInteger();
+        searchPool = Executors.newFixedThreadPool(Math.max(1, configSearch.getThreads()), runnable -> {
+            Thread thread = new Thread(runnable, "SearchFanOut-" + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        searchPool.shutdownNow();
+    }
 
     public Map<String, Object> search(String query, String siteUrl, int offset, int limit) {
         //log.info("Search request: query='{}', site='{}'", query, siteUrl);
 
-        // Разбиваем запрос на леммы
-        Set<String> queryLemmasSet = extractQueryLemmas(query);
+        // Разбираем запрос один раз, результат используется на всех этапах
+        AnalyzedQuery analyzedQuery = queryAnalyzerService.analyze(query);
+        Set<String> queryLemmasSet = analyzedQuery.lemmas();
         //log.info("Extracted lemmas from query: {}", queryLemmasSet);
 
         if (queryLemmasSet.isEmpty()) {
@@ -34,14 +88,132 @@ public class SearchService {
 
         // Определяем сайты для поиска
         List<SiteEntity> sites = getSitesForSearch(siteUrl);
+        if (!analyzedQuery.siteFilters().isEmpty()) {
+            // Операторы site: сужают выбор сайтов
+            sites = sites.stream().filter(site -> matchesSiteFilter(site, analyzedQuery.siteFilters())).toList();
+        }
         //log.info("Found {} sites for search", sites.size());
         if (sites.isEmpty()) {
             //log.info("No sites found for search");
             return createEmptyResponse();
         }
 
+        if (resultCache == null) {
+            return searchSites(analyzedQuery, sites, offset, limit);
+        }
+        ResultKey key = new ResultKey(analyzedQuery.normalizedQuery(), siteUrl == null ? "" : siteUrl,
+                offset, limit, generations(sites));
+        Map<String, Object> cached = resultCache.getIfPresent(key);
+        if (cached != null) {
+            return cached;
+        }
+        Map<String, Object> response = searchSites(analyzedQuery, sites, offset, limit);
+        // Неполная выдача (сайт не уложился в срок) не кэшируется
+        if (!response.containsKey("partial")) {
+            resultCache.put(key, response);
+        }
+        return response;
+    }
+
+    /**
+     * Подсказки для строки поиска: последнее слово запроса дополняется частыми леммами сайтов,
+     * предыдущая часть запроса сохраняется как есть
+     */
+    public Map<String, Object> suggest(String query, String siteUrl, int limit) {
+        String text = query == null ? "" : query.stripLeading().toLowerCase();
+        int split = text.lastIndexOf(' ') + 1;
+        String prefix = text.substring(split);
+        List<String> suggestions = new ArrayList<>();
+        if (!prefix.isEmpty()) {
+            for (SuggestService.Suggestion suggestion :
+                    suggestService.suggest(prefix, getSitesForSearch(siteUrl), Math.min(limit, 50))) {
+                suggestions.add(text.substring(0, split) + suggestion.lemma());
+            }
+        }
+        Map<String, Object> response = new HashMap<>();
+        response.put("result", true);
+        response.put("suggestions", suggestions);
+        return response;
+    }
+
+    /** Статистика кэша ответов поиска */
+    public Map<String, Object> getCacheStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("enabled", resultCache != null);
+        if (resultCache != null) {
+            stats.put("size", resultCache.size());
+            stats.put("hits", resultCache.hitCount());
+            stats.put("misses", resultCache.missCount());
+            stats.put("evictions", resultCache.evictionCount());
+            stats.put("hitRate", resultCache.hitRate());
+        }
+        return stats;
+    }
+
+    // Хост сайта совпадает с одним из операторов site: или является его поддоменом
+    private static boolean matchesSiteFilter(SiteEntity site, List<String> siteFilters) {
+        String host = hostOf(site.getUrl());
+        for (String filter : siteFilters) {
+            String filterHost = hostOf(filter);
+            if (host.equals(filterHost) || host.endsWith("." + filterHost)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static String hostOf(String url) {
+        String host = url.toLowerCase().replaceFirst("^[a-z]+://", "");
+        int slash = host.indexOf('/');
+        if (slash >= 0) {
+            host = host.substring(0, slash);
+        }
+        return host.startsWith("www.") ? host.substring(4) : host;
+    }
+
+    // Отпечаток состояния индекса: id и активное поколение каждого сайта поиска
+    private static String generations(List<SiteEntity> sites) {
+        StringBuilder generations = new StringBuilder();
+        for (SiteEntity site : sites) {
+            generations.append(site.getId()).append(':').append(site.getActiveGeneration()).append(',');
+        }
+        return generations.toString();
+    }
+
+    private Map<String, Object> searchSites(AnalyzedQuery analyzedQuery, List<SiteEntity> allSites,
+                                            int offset, int limit) {
+        // Фильтры Блума до словаря и БД отсекают леммы, которых точно нет, и сайты без единой леммы запроса
+        Set<String> queryLemmasSet = new LinkedHashSet<>();
+        List<SiteEntity> sites = new ArrayList<>(allSites.size());
+        for (SiteEntity site : allSites) {
+            boolean candidate = false;
+            for (String lemma : analyzedQuery.lemmas()) {
+                if (lemmaFilterService.mightContain(site, lemma)) {
+                    queryLemmasSet.add(lemma);
+                    candidate = true;
+                }
+            }
+            if (candidate) {
+                sites.add(site);
+            }
+        }
+        if (sites.isEmpty()) {
+            return createEmptyResponse();
+        }
+
+        // Если индексы всех сайтов уже в памяти, БД нужна только для страниц итоговой выдачи
+        List<SiteIndex> siteIndexes = getSiteIndexes(sites);
+        if (siteIndexes != null) {
+            return searchInMemory(analyzedQuery, queryLemmasSet, sites, siteIndexes, offset, limit);
+        }
+
         // Ищем леммы в базе
-        List<LemmaEntity> foundLemmas = findLemmasInDatabase(queryLemmasSet, sites);
+        Set<String> lookupLemmas = queryLemmasSet;
+        if (analyzedQuery.isBoolean()) {
+            lookupLemmas = new LinkedHashSet<>(queryLemmasSet);
+            lookupLemmas.addAll(analyzedQuery.excludedLemmas());
+        }
+        List<LemmaEntity> foundLemmas = findLemmasInDatabase(lookupLemmas, sites);
         /*log.info("Found {} lemmas in database: {}", foundLemmas.size(),
                 foundLemmas.stream().map(LemmaEntity::getLemma).toList());*/
 
@@ -50,6 +222,11 @@ public class SearchService {
             return createEmptyResponse();
         }
 
+        if (analyzedQuery.isBoolean()) {
+            // ИЛИ и исключения: страницы отбираются деревом запроса по спискам каждого сайта
+            return searchBooleanInDatabase(analyzedQuery, foundLemmas, sites, offset, limit);
+        }
+
         // Фильтруем слишком частые леммы
         foundLemmas = filterTooFrequentLemmas(foundLemmas, sites);
         //log.info("After filtering: {} lemmas", foundLemmas.size());
@@ -61,229 +238,569 @@ public class SearchService {
         // Сортируем леммы по частоте (от редких к частым)
         foundLemmas.sort(Comparator.comparingInt(LemmaEntity::getFrequency));
 
-        // Ищем страницы по леммам
-        List<PageEntity> foundPages = findPagesByLemmas(foundLemmas);
-        //log.info("Found {} pages", foundPages.size());
-
-        if (foundPages.isEmpty()) {
-            //log.info("No pages found for the lemmas");
-            return createEmptyResponse();
+        Set<Integer> queryTermIds = new HashSet<>();
+        for (LemmaEntity lemma : foundLemmas) {
+            queryTermIds.add(lemma.getTermId());
         }
 
-        // Рассчитываем релевантность
-        List<Map<String, Object>> results = calculateRelevance(foundPages, foundLemmas, query);
+        // Без фраз совпадение, ранжирование и пагинация выполняются в БД: запрос страницы и запрос количества
+        if (toPhrases(analyzedQuery).isEmpty()) {
+            return searchWithSql(analyzedQuery, foundLemmas, queryTermIds, offset, limit);
+        }
 
-        // Сортируем по релевантности и пагинируем
-        results = sortAndPaginate(results, offset, limit);
+        // Ищем страницы по леммам, ранги суммируются при пересечении
+        List<SiteTask> tasks = findPagesByLemmas(foundLemmas, sites);
 
-        //log.info("Returning {} results", results.size());
-        return createResponse(results, results.size());
+        return rankAndPaginate(analyzedQuery, tasks, queryTermIds, offset, limit);
     }
 
-    private Set<String> extractQueryLemmas(String query) {
-        Map<String, Integer> lemmasMap = lemmaService.extractLemmas(query);
-        return lemmasMap.keySet();
-    }
+    private Map<String, Object> searchWithSql(AnalyzedQuery analyzedQuery, List<LemmaEntity> lemmas,
+                                              Set<Integer> queryTermIds, int offset, int limit) {
+        // Страница должна содержать все леммы запроса своего сайта. Число лемм считается здесь
+        // и передаётся параметром: сайты с одинаковым числом лемм ищутся одним запросом
+        Map<Integer, Integer> lemmaCountBySite = new HashMap<>();
+        for (LemmaEntity lemma : lemmas) {
+            lemmaCountBySite.merge(lemma.getSite().getId(), 1, Integer::sum);
+        }
+        Map<Integer, List<Integer>> lemmaIdsByRequired = new TreeMap<>();
+        for (LemmaEntity lemma : lemmas) {
+            int required = lemmaCountBySite.get(lemma.getSite().getId());
+            lemmaIdsByRequired.computeIfAbsent(required, r -> new ArrayList<>()).add(lemma.getId());
+        }
 
-    private List<SiteEntity> getSitesForSearch(String siteUrl) {
-        if (siteUrl == null || siteUrl.isEmpty()) {
-            // Ищем по всем сайтам
-            return siteRepository.findAll();
-        } else {
-            // Ищем по конкретному сайту
-            return siteRepository.findByUrl(siteUrl)
-                    .map(List::of)
-                    .orElse(Collections.emptyList());
+        Map<String, Object> response = searchSqlGroups(analyzedQuery, lemmaIdsByRequired, queryTermIds, offset, limit);
+        if ((int) response.get("count") == 0 && lemmaIdsByRequired.keySet().stream().anyMatch(required -> required > 1)) {
+            // Как и при поиске в памяти: всех слов нет ни на одном сайте - ищем страницы с любым из них
+            List<Integer> lemmaIds = lemmas.stream().map(LemmaEntity::getId).toList();
+            response = searchSqlGroups(analyzedQuery, Map.of(1, lemmaIds), queryTermIds, offset, limit);
+            if ((int) response.get("count") > 0) {
+                response.put("matchAll", false);
+            }
         }
+        return response;
     }
 
-    private List<LemmaEntity> findLemmasInDatabase(Set<String> queryLemmas, List<SiteEntity> sites) {
-        List<LemmaEntity> result = new ArrayList<>();
-        //log.info("Looking for lemmas: {} in {} sites", queryLemmas, sites.size());
-        for (SiteEntity site : sites) {
-            //log.info("Checking site: {}", site.getUrl());
-            for (String lemmaText : queryLemmas) {
-                //log.info("Looking for lemma: '{}' in site: {}", lemmaText, site.getUrl());
-                Optional<LemmaEntity> lemmaOpt = lemmaRepository.findBySiteAndLemma(site, lemmaText);
-                if (lemmaOpt.isPresent()) {
-                    LemmaEntity lemma = lemmaOpt.get();
-                    //log.info("Found lemma: {} with frequency: {}", lemma.getLemma(), lemma.getFrequency());
-                    result.add(lemma);
-                } /*else {
-                    log.info("Lemma '{}' not found in site: {}", lemmaText, site.getUrl());
-                }*/
+    // Страницы, содержащие не меньше required лемм из своей группы (required -> id строк lemma)
+    private Map<String, Object> searchSqlGroups(AnalyzedQuery analyzedQuery,
+                                                Map<Integer, List<Integer>> lemmaIdsByRequired,
+                                                Set<Integer> queryTermIds, int offset, int limit) {
+        long totalCount = 0;
+        float maxAbsRelevance = 0;
+        Map<Integer, List<Integer>> matchedGroups = new LinkedHashMap<>();
+        for (Map.Entry<Integer, List<Integer>> group : lemmaIdsByRequired.entrySet()) {
+            Object[] summary = indexRepository.countSearchResults(group.getValue(), group.getKey()).get(0);
+            long count = ((Number) summary[0]).longValue();
+            if (count > 0) {
+                totalCount += count;
+                maxAbsRelevance = Math.max(maxAbsRelevance, ((Number) summary[1]).floatValue());
+                matchedGroups.put(group.getKey(), group.getValue());
             }
         }
+        if (totalCount == 0 || offset >= totalCount) {
+            return createResponse(Collections.emptyList(), (int) totalCount);
+        }
 
-        return result;
+        List<PageHit> slice = new ArrayList<>(limit);
+        if (matchedGroups.size() == 1) {
+            // Одна группа сайтов листается в БД
+            Map.Entry<Integer, List<Integer>> group = matchedGroups.entrySet().iterator().next();
+            for (Object[] row : indexRepository.searchPages(group.getValue(), group.getKey(), limit, offset)) {
+                slice.add(new PageHit(((Number) row[0]).intValue(), ((Number) row[1]).floatValue()));
+            }
+        } else {
+            // Несколько групп: первые offset + limit страниц каждой сливаются в общую выдачу
+            List<Matches> groupTops = new ArrayList<>(matchedGroups.size());
+            matchedGroups.forEach((required, lemmaIds) ->
+                    groupTops.add(toMatches(indexRepository.searchPages(lemmaIds, required, offset + limit, 0))));
+            Matches best = TopKCollector.merge(groupTops, offset + limit);
+            for (int i = offset; i < best.size(); i++) {
+                slice.add(new PageHit(best.pageIds()[i], best.scores()[i]));
+            }
+        }
+        return createResponse(toResults(slice, maxAbsRelevance, analyzedQuery, queryTermIds), (int) totalCount);
     }
 
-    private List<LemmaEntity> filterTooFrequentLemmas(List<LemmaEntity> lemmas, List<SiteEntity> sites) {
-        // Фильтруем леммы, которые встречаются на слишком большом проценте страниц
-        List<LemmaEntity> filtered = new ArrayList<>();
+    // Строки (id страницы, релевантность) по убыванию релевантности
+    private static Matches toMatches(List<Object[]> rows) {
+        int[] pageIds = new int[rows.size()];
+        float[] scores = new float[rows.size()];
+        for (int i = 0; i < rows.size(); i++) {
+            pageIds[i] = ((Number) rows.get(i)[0]).intValue();
+            scores[i] = ((Number) rows.get(i)[1]).floatValue();
+        }
+        return new Matches(pageIds, scores);
+    }
 
-        for (LemmaEntity lemma : lemmas) {
-            long totalPages = pageRepository.countBySite(lemma.getSite());
-            if (totalPages == 0) continue;
+    private Map<String, Object> searchBooleanInDatabase(AnalyzedQuery analyzedQuery, List<LemmaEntity> foundLemmas,
+                                                        List<SiteEntity> sites, int offset, int limit) {
+        Map<String, Integer> termIds = termDictionaryService.findIds(
+                union(analyzedQuery.lemmas(), analyzedQuery.excludedLemmas()));
+        Set<LemmaEntity> usable = new HashSet<>(filterTooFrequentLemmas(foundLemmas, sites));
+        Set<Integer> positiveIds = new HashSet<>();
+        for (String lemma : analyzedQuery.lemmas()) {
+            Integer termId = termIds.get(lemma);
+            if (termId != null) {
+                positiveIds.add(termId);
+            }
+        }
 
-            float frequencyPercentage = (float) lemma.getFrequency() / totalPages * 100;
+        // Строки лемм по сайтам: id сайта -> id термина -> лемма сайта
+        Map<Integer, Map<Integer, LemmaEntity>> lemmasBySite = new LinkedHashMap<>();
+        Set<Integer> queryTermIds = new HashSet<>();
+        for (LemmaEntity lemma : foundLemmas) {
+            lemmasBySite.computeIfAbsent(lemma.getSite().getId(), k -> new HashMap<>()).put(lemma.getTermId(), lemma);
+            if (usable.contains(lemma) && positiveIds.contains(lemma.getTermId())) {
+                queryTermIds.add(lemma.getTermId());
+            }
+        }
 
-            /*log.info("Лемма '{}': frequency={}, totalPages={}, percentage={}%",
-                    lemma.getLemma(), lemma.getFrequency(), totalPages, frequencyPercentage);*/
+        List<SiteTask> tasks = new ArrayList<>(sites.size());
+        for (SiteEntity site : sites) {
+            Map<Integer, LemmaEntity> siteLemmas = lemmasBySite.getOrDefault(site.getId(), Map.of());
+            TermSource terms = new TermSource() {
+                @Override
+                public PostingCursor postings(String lemma) {
+                    LemmaEntity entity = find(lemma);
+                    return entity != null ? loadPostings(entity) : null;
+                }
 
-            // Исключаем леммы, которые встречаются на более чем 80% страниц
-            if (frequencyPercentage < 98) {
-                filtered.add(lemma);
-            } /*else {
-                log.info("ОТФИЛЬТРОВАНА ({}% > 80%): {}", frequencyPercentage, lemma.getLemma());
-            }*/
+                @Override
+                public boolean ignored(String lemma) {
+                    LemmaEntity entity = find(lemma);
+                    return entity != null && !usable.contains(entity);
+                }
+
+                private LemmaEntity find(String lemma) {
+                    Integer termId = termIds.get(lemma);
+                    return termId != null ? siteLemmas.get(termId) : null;
+                }
+            };
+            tasks.add(new SiteTask(site.getUrl(),
+                    (phrases, k) -> collectSite(QueryEvaluator.evaluate(analyzedQuery.root(), terms), phrases, k),
+                    null));
         }
+        return rankAndPaginate(analyzedQuery, tasks, queryTermIds, offset, limit);
+    }
 
-        return filtered;
+    private static Set<String> union(Set<String> first, Set<String> second) {
+        Set<String> union = new LinkedHashSet<>(first);
+        union.addAll(second);
+        return union;
     }
 
-    private List<PageEntity> findPagesByLemmas(List<LemmaEntity> lemmas) {
-        if (lemmas.isEmpty()) {
-            //log.info("findPagesByLemmas: список лемм пустой!");
-            return Collections.emptyList();
+    private List<SiteIndex> getSiteIndexes(List<SiteEntity> sites) {
+        List<SiteIndex> siteIndexes = new ArrayList<>(sites.size());
+        for (SiteEntity site : sites) {
+            SiteIndex siteIndex = invertedIndexService.get(site);
+            if (siteIndex == null) {
+                return null; // Индекс ещё загружается или отстал от активного поколения
+            }
+            siteIndexes.add(siteIndex);
         }
-        //log.info("Starting to find pages for {} lemmas", lemmas.size());
-        /*log.info("findPagesByLemmas: ищем страницы для лемм: {}",
-                lemmas.stream().map(LemmaEntity::getLemma).toList());*/
+        return siteIndexes;
+    }
 
-        // Группируем леммы по сайтам
-        Map<SiteEntity, List<LemmaEntity>> lemmasBySite = new HashMap<>();
-        for (LemmaEntity lemma : lemmas) {
-            SiteEntity site = lemma.getSite();
-            lemmasBySite
-                    .computeIfAbsent(site, k -> new ArrayList<>())
-                    .add(lemma);
+    private Map<String, Object> searchInMemory(AnalyzedQuery analyzedQuery, Set<String> queryLemmas,
+                                               List<SiteEntity> sites, List<SiteIndex> siteIndexes,
+                                               int offset, int limit) {
+        boolean booleanQuery = analyzedQuery.isBoolean();
+        Map<String, Integer> termIds = termDictionaryService.findIds(
+                booleanQuery ? union(queryLemmas, analyzedQuery.excludedLemmas()) : queryLemmas);
+        if (termIds.isEmpty()) {
+            return createEmptyResponse();
         }
 
-        //log.info("Lemmas grouped by {} sites", lemmasBySite.size());
+        List<SiteTask> tasks = new ArrayList<>();
+        Set<Integer> queryTermIds = new HashSet<>();
+        for (int i = 0; i < siteIndexes.size(); i++) {
+            SiteIndex siteIndex = siteIndexes.get(i);
+            // Как и при поиске по БД: отсутствующие на сайте, стоп- и слишком частые леммы не участвуют
+            List<PostingList> postings = new ArrayList<>();
+            for (String lemma : queryLemmas) {
+                Integer termId = termIds.get(lemma);
+                TermInfo term = termId != null ? siteIndex.term(termId) : null;
+                if (term == null || term.stopLemma() || siteIndex.totalPages() == 0) continue;
+                float frequencyPercentage = (float) term.frequency() / siteIndex.totalPages() * 100;
+                if (frequencyPercentage < 98 && term.postings().size() > 0) {
+                    postings.add(term.postings());
+                    queryTermIds.add(termId);
+                }
+            }
+            if (booleanQuery) {
+                TermSource terms = siteTerms(siteIndex, termIds);
+                tasks.add(new SiteTask(sites.get(i).getUrl(),
+                        (phrases, k) -> collectSite(QueryEvaluator.evaluate(analyzedQuery.root(), terms), phrases, k),
+                        null));
+            } else if (!postings.isEmpty()) {
+                tasks.add(new SiteTask(sites.get(i).getUrl(), (phrases, k) -> searchSiteIndex(postings, phrases, k),
+                        postings.size() > 1 ? (phrases, k) -> searchSiteIndexAnyTerm(postings, k) : null));
+            }
+        }
+        return rankAndPaginate(analyzedQuery, tasks, queryTermIds, offset, limit);
+    }
 
-        List<PageEntity> allPages = new ArrayList<>();
+    // Списки слов запроса в индексе сайта; стоп- и слишком частые леммы не ограничивают выдачу
+    private static TermSource siteTerms(SiteIndex siteIndex, Map<String, Integer> termIds) {
+        return new TermSource() {
+            @Override
+            public PostingCursor postings(String lemma) {
+                TermInfo term = find(lemma);
+                return term != null && term.postings().size() > 0 ? term.postings().iterator() : null;
+            }
 
-        // Ищем страницы для каждого сайта отдельно
-        for (Map.Entry<SiteEntity, List<LemmaEntity>> entry : lemmasBySite.entrySet()) {
-            SiteEntity site = entry.getKey();
-            List<LemmaEntity> siteLemmas = entry.getValue();
+            @Override
+            public boolean ignored(String lemma) {
+                TermInfo term = find(lemma);
+                return term != null && (term.stopLemma() || siteIndex.totalPages() == 0
+                        || (float) term.frequency() / siteIndex.totalPages() * 100 >= 98);
+            }
 
-            //log.info("Processing site: {} with {} lemmas", site.getUrl(), siteLemmas.size());
+            private TermInfo find(String lemma) {
+                Integer termId = termIds.get(lemma);
+                return termId != null ? siteIndex.term(termId) : null;
+            }
+        };
+    }
 
-            List<PageEntity> sitePages = findPagesForSite(siteLemmas);
-            allPages.addAll(sitePages);
+    // Сайты обрабатываются параллельно, их лучшие страницы сливаются в общую выдачу
+    private Map<String, Object> rankAndPaginate(AnalyzedQuery analyzedQuery, List<SiteTask> tasks,
+                                                Set<Integer> queryTermIds, int offset, int limit) {
+        List<Phrase> phrases = toPhrases(analyzedQuery);
+        int k = offset + limit;
+        List<String> timedOutSites = new ArrayList<>();
+        List<SiteResult> siteResults = fanOut(tasks, phrases, k, timedOutSites);
+        boolean matchAll = true;
+        if (phrases.isEmpty() && siteResults.stream().allMatch(siteResult -> siteResult.totalHits() == 0)) {
+            // Ни на одном сайте нет страниц со всеми словами запроса - ищем страницы с любым из них
+            List<SiteTask> fallbacks = new ArrayList<>();
+            for (SiteTask task : tasks) {
+                if (task.fallback() != null) {
+                    fallbacks.add(new SiteTask(task.siteUrl(), task.fallback(), null));
+                }
+            }
+            if (!fallbacks.isEmpty()) {
+                List<String> fallbackTimedOut = new ArrayList<>();
+                siteResults = fanOut(fallbacks, phrases, k, fallbackTimedOut);
+                for (String siteUrl : fallbackTimedOut) {
+                    if (!timedOutSites.contains(siteUrl)) {
+                        timedOutSites.add(siteUrl);
+                    }
+                }
+                matchAll = false;
+            }
         }
-        //log.info("Total pages found across all sites: {}", allPages.size());
-        return allPages;
-    }
 
-    private List<PageEntity> findPagesForSite(List<LemmaEntity> siteLemmas) {
-        if (siteLemmas.isEmpty()) {
-            return Collections.emptyList();
+        // Релевантность нормируется по общему максимуму всех сайтов
+        int totalCount = 0;
+        float maxAbsRelevance = 0;
+        boolean countExact = true;
+        List<Matches> siteTops = new ArrayList<>(siteResults.size());
+        for (SiteResult siteResult : siteResults) {
+            totalCount += siteResult.totalHits();
+            maxAbsRelevance = Math.max(maxAbsRelevance, siteResult.maxScore());
+            countExact &= siteResult.exact();
+            siteTops.add(siteResult.top());
         }
-        //log.info("findPagesForSite: начинаем для {} лемм", siteLemmas.size());
 
-        // Сортируем леммы сайта по частоте (от редких к частым)
-        siteLemmas.sort(Comparator.comparingInt(LemmaEntity::getFrequency));
+        Map<String, Object> response;
+        if (totalCount == 0) {
+            response = createEmptyResponse();
+        } else {
+            Matches best = TopKCollector.merge(siteTops, k);
+            List<PageHit> slice = new ArrayList<>();
+            for (int i = offset; i < best.size(); i++) {
+                slice.add(new PageHit(best.pageIds()[i], best.scores()[i]));
+            }
+            response = createResponse(toResults(slice, maxAbsRelevance, analyzedQuery, queryTermIds), totalCount);
+            if (!countExact) {
+                // Отсечение пропустило страницы, не входящие в лучшие k: count - нижняя оценка
+                response.put("countExact", false);
+            }
+            if (!matchAll) {
+                // Страниц со всеми словами запроса нет, выдача по любому из слов
+                response.put("matchAll", false);
+            }
+        }
+        if (!timedOutSites.isEmpty()) {
+            // Выдача без сайтов, не уложившихся в срок
+            response.put("partial", true);
+            response.put("timedOutSites", timedOutSites);
+        }
+        return response;
+    }
 
-        LemmaEntity firstLemma = siteLemmas.get(0);
-        List<IndexEntity> indexes = indexRepository.findByLemma(firstLemma);
-        Set<PageEntity> pages = new HashSet<>();
+    private List<SiteResult> fanOut(List<SiteTask> tasks, List<Phrase> phrases, int k, List<String> timedOutSites) {
+        if (tasks.size() == 1) {
+            // Один сайт считается в потоке запроса, без передачи в пул
+            return List.of(tasks.get(0).search().run(phrases, k));
+        }
+        List<Callable<SiteResult>> calls = new ArrayList<>(tasks.size());
+        for (SiteTask task : tasks) {
+            calls.add(() -> task.search().run(phrases, k));
+        }
 
-        for (IndexEntity index : indexes) {
-            pages.add(index.getPage());
+        List<SiteResult> results = new ArrayList<>(tasks.size());
+        int handled = 0; // Задачи [0, handled) уже разобраны: результат взят или сайт отмечен опоздавшим
+        try {
+            List<Future<SiteResult>> futures = searchPool.invokeAll(calls,
+                    configSearch.getDeadlineMs(), TimeUnit.MILLISECONDS);
+            for (; handled < futures.size(); handled++) {
+                Future<SiteResult> future = futures.get(handled);
+                if (future.isCancelled()) {
+                    timedOutSites.add(tasks.get(handled).siteUrl());
+                    continue;
+                }
+                try {
+                    results.add(future.get());
+                } catch (ExecutionException e) {
+                    throw e.getCause() instanceof RuntimeException runtime
+                            ? runtime : new IllegalStateException(e.getCause());
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            for (SiteTask task : tasks.subList(handled, tasks.size())) {
+                timedOutSites.add(task.siteUrl());
+            }
         }
+        return results;
+    }
 
-        /*log.info("Site '{}': found {} pages for first lemma '{}'",
-                firstLemma.getSite().getUrl(), pages.size(), firstLemma.getLemma());*/
+    // Проверка фраз и отбор лучших k страниц одного сайта
+    private SiteResult collectSite(Matches matches, List<Phrase> phrases, int k) {
+        Set<Integer> phraseMatched = null;
+        if (!phrases.isEmpty() && matches.size() > 0) {
+            // Фразы и близость слов проверяются по позиционному индексу
+            phraseMatched = new HashSet<>();
+            List<PageEntity> pages = new ArrayList<>(loadPages(matches.pageIds()).values());
+            for (PageEntity page : filterByPhrases(pages, phrases)) {
+                phraseMatched.add(page.getId());
+            }
+        }
 
-        // Фильтруем по остальным леммам этого же сайта
-        for (int i = 1; i < siteLemmas.size() && !pages.isEmpty(); i++) {
-            LemmaEntity lemma = siteLemmas.get(i);
-            List<IndexEntity> lemmaIndexes = indexRepository.findByLemma(lemma);
+        // Полная сортировка не нужна: куча хранит только страницы до конца запрошенной
+        TopKCollector topK = new TopKCollector(k);
+        for (int i = 0; i < matches.size(); i++) {
+            int pageId = matches.pageIds()[i];
+            if (phraseMatched == null || phraseMatched.contains(pageId)) {
+                topK.collect(pageId, matches.scores()[i]);
+            }
+        }
+        return new SiteResult(topK.drainSorted(), topK.totalHits(), topK.maxScore(), true);
+    }
 
-            Set<PageEntity> lemmaPages = new HashSet<>();
-            for (IndexEntity index : lemmaIndexes) {
-                lemmaPages.add(index.getPage());
+    // Поиск по индексу сайта в памяти: лучшие k страниц без подсчёта релевантности всех совпадений
+    private SiteResult searchSiteIndex(List<PostingList> postings, List<Phrase> phrases, int k) {
+        if (!phrases.isEmpty()) {
+            // Фразы проверяются по всем совпадениям, отсечение по рангам здесь неприменимо
+            List<PostingCursor> cursors = new ArrayList<>(postings.size());
+            for (PostingList posting : postings) {
+                cursors.add(posting.iterator());
             }
+            return collectSite(PostingIntersection.intersect(cursors), phrases, k);
+        }
+        boolean prune = configSearch.isPruning();
+        TopKCollector topK = new TopKCollector(k);
+        boolean exact = BlockMaxWand.conjunctive(postings, topK, prune);
+        return new SiteResult(topK.drainSorted(), topK.totalHits(), topK.maxScore(), exact);
+    }
 
-            /*log.info("Site '{}': filtering by lemma '{}' with {} pages",
-                    lemma.getSite().getUrl(), lemma.getLemma(), lemmaPages.size());*/
+    // Страницы сайта с любым из слов запроса: запасной поиск, когда всех слов нет ни на одном сайте
+    private SiteResult searchSiteIndexAnyTerm(List<PostingList> postings, int k) {
+        TopKCollector topK = new TopKCollector(k);
+        boolean exact = BlockMaxWand.disjunctive(postings, topK, configSearch.isPruning());
+        return new SiteResult(topK.drainSorted(), topK.totalHits(), topK.maxScore(), exact);
+    }
 
-            pages.retainAll(lemmaPages);
-            //log.info("After filtering: {} pages remain", pages.size());
+    // Метаданные, заголовки и сниппеты - только для страниц выдачи
+    private List<Map<String, Object>> toResults(List<PageHit> slice, float maxAbsRelevance,
+                                                AnalyzedQuery analyzedQuery, Set<Integer> queryTermIds) {
+        Map<Integer, PageEntity> pages = loadPages(slice.stream().mapToInt(PageHit::pageId).toArray());
+        List<Map<String, Object>> results = new ArrayList<>(slice.size());
+        for (PageHit hit : slice) {
+            PageEntity page = pages.get(hit.pageId());
+            if (page != null) {
+                float relativeRelevance = maxAbsRelevance > 0 ? hit.relevance() / maxAbsRelevance : 0;
+                results.add(toResult(page, relativeRelevance, analyzedQuery, queryTermIds));
+            }
         }
-        //log.info("findPagesForSite: найдено {} страниц после фильтрации", pages.size());
-        return new ArrayList<>(pages);
+        return results;
     }
 
-    private List<Map<String, Object>> calculateRelevance(List<PageEntity> pages,
-                                                         List<LemmaEntity> lemmas,
-                                                         String query) {
-        //log.info("calculateRelevance: получено {} страниц, {} лемм", pages.size(), lemmas.size());
-
-        List<Map<String, Object>> results = new ArrayList<>();
+    private Map<Integer, PageEntity> loadPages(int[] pageIds) {
+        List<Integer> ids = new ArrayList<>(pageIds.length);
+        for (int pageId : pageIds) {
+            ids.add(pageId);
+        }
+        Map<Integer, PageEntity> pages = new HashMap<>(ids.size() * 2);
+        for (PageEntity page : pageRepository.findAllById(ids)) {
+            pages.put(page.getId(), page);
+        }
+        return pages;
+    }
 
-        if (pages.isEmpty() || lemmas.isEmpty()) {
-            //log.info("calculateRelevance: СТРАНИЦ НЕТ!");
-            return results;
+    // Фразы запроса переводятся на id словаря (словарь пополняется, поэтому не кэшируется вместе с запросом)
+    private List<Phrase> toPhrases(AnalyzedQuery analyzedQuery) {
+        List<Phrase> phrases = new ArrayList<>();
+        for (PhraseQuery phraseQuery : analyzedQuery.phrases()) {
+            List<String> sequence = phraseQuery.lemmas();
+            Map<String, Integer> termIds = termDictionaryService.findIds(
+                    sequence.stream().filter(Objects::nonNull).toList());
+
+            // Служебные и неизвестные слова не проверяются, но сохраняют расстояние между остальными
+            int[] ids = new int[sequence.size()];
+            int[] offsets = new int[sequence.size()];
+            int count = 0;
+            for (int i = 0; i < sequence.size(); i++) {
+                Integer termId = sequence.get(i) != null ? termIds.get(sequence.get(i)) : null;
+                if (termId != null) {
+                    ids[count] = termId;
+                    offsets[count++] = i;
+                }
+            }
+            int slop = phraseQuery.slop();
+            if (count > 1 || (count == 1 && slop > 0)) {
+                phrases.add(new Phrase(Arrays.copyOf(ids, count), Arrays.copyOf(offsets, count), slop));
+            }
         }
+        return phrases;
+    }
 
-        // Находим максимальную абсолютную релевантность
-        float maxAbsRelevance = 0;
-        Map<PageEntity, Float> pageRelevance = new HashMap<>();
+    private List<PageEntity> filterByPhrases(List<PageEntity> pages, List<Phrase> phrases) {
+        Set<Integer> phraseTerms = new HashSet<>();
+        for (Phrase phrase : phrases) {
+            for (int termId : phrase.termIds()) {
+                phraseTerms.add(termId);
+            }
+        }
 
+        List<PageEntity> filtered = new ArrayList<>();
         for (PageEntity page : pages) {
-            float absRelevance = 0;
-
-            // Суммируем ранги всех лемм на странице
-            for (LemmaEntity lemma : lemmas) {
-                Optional<IndexEntity> indexOpt = indexRepository.findByPageAndLemma(page, lemma);
-                if (indexOpt.isPresent()) {
-                    absRelevance += indexOpt.get().getRank_count();
-                }
+            if (page.getPositionsRef() == null) {
+                // Страница проиндексирована без позиций: фразу проверить нельзя, оставляем
+                filtered.add(page);
+                continue;
+            }
+            Map<Integer, PagePositions.TermPositions> positions =
+                    PagePositions.decode(contentStore.readPositions(page), phraseTerms);
+            if (phrases.stream().allMatch(phrase -> PositionalMatcher.matches(positions, phrase))) {
+                filtered.add(page);
             }
+        }
+        return filtered;
+    }
 
-            pageRelevance.put(page, absRelevance);
-            maxAbsRelevance = Math.max(maxAbsRelevance, absRelevance);
+    private List<SiteEntity> getSitesForSearch(String siteUrl) {
+        if (siteUrl == null || siteUrl.isEmpty()) {
+            // Ищем по всем сайтам, кроме логически удалённых
+            return corpusStatisticsService.getSites();
+        } else {
+            // Ищем по конкретному сайту
+            return corpusStatisticsService.findSite(siteUrl)
+                    .map(List::of)
+                    .orElse(Collections.emptyList());
         }
+    }
 
-        // Рассчитываем относительную релевантность
-        for (Map.Entry<PageEntity, Float> entry : pageRelevance.entrySet()) {
-            PageEntity page = entry.getKey();
-            float absRelevance = entry.getValue();
-            float relativeRelevance = maxAbsRelevance > 0 ? absRelevance / maxAbsRelevance : 0;
+    private List<LemmaEntity> findLemmasInDatabase(Set<String> queryLemmas, List<SiteEntity> sites) {
+        //log.info("Looking for lemmas: {} in {} sites", queryLemmas, sites.size());
+        // Леммы запроса переводятся в id глобального словаря, отсутствующих нет ни на одном сайте
+        Collection<Integer> termIds = termDictionaryService.findIds(queryLemmas).values();
+        if (termIds.isEmpty()) {
+            return new ArrayList<>();
+        }
 
-            Map<String, Object> result = new HashMap<>();
-            result.put("site", page.getSite().getUrl());
-            result.put("siteName", page.getSite().getName());
-            result.put("uri", page.getPath());
-            result.put("title", extractTitle(page.getContentHtml()));
-            result.put("snippet", generateSnippet(page.getContentText(), query));
-            result.put("relevance", relativeRelevance);
+        // Один запрос на все сайты, только активные поколения индекса
+        return new ArrayList<>(lemmaRepository.findActiveBySitesAndTermIds(sites, termIds));
+    }
 
-            results.add(result);
+    private List<LemmaEntity> filterTooFrequentLemmas(List<LemmaEntity> lemmas, List<SiteEntity> sites) {
+        // Фильтруем леммы, которые встречаются на слишком большом проценте страниц
+        List<LemmaEntity> filtered = new ArrayList<>();
+        Map<Integer, SiteEntity> sitesById = new HashMap<>();
+        for (SiteEntity site : sites) {
+            sitesById.put(site.getId(), site);
         }
-        return results;
+
+        for (LemmaEntity lemma : lemmas) {
+            // Стоп-леммы отмечены при индексации, записей индекса для них нет
+            if (lemma.getStopLemma()) continue;
+
+            // Поколения, проиндексированные до отметки стоп-лемм, проверяются по доле страниц
+            SiteEntity site = sitesById.get(lemma.getSite().getId());
+            long totalPages = site != null ? corpusStatisticsService.pageCount(site) : 0;
+            if (totalPages == 0) continue;
+
+            float frequencyPercentage = (float) lemma.getFrequency() / totalPages * 100;
+
+            /*log.info("Лемма '{}': frequency={}, totalPages={}, percentage={}%",
+                    lemma.getLemma(), lemma.getFrequency(), totalPages, frequencyPercentage);*/
+
+            // Исключаем леммы, которые встречаются на более чем 80% страниц
+            if (frequencyPercentage < 98) {
+                filtered.add(lemma);
+            } /*else {
+                log.info("ОТФИЛЬТРОВАНА ({}% > 80%): {}", frequencyPercentage, lemma.getLemma());
+            }*/
+        }
+
+        return filtered;
     }
 
-    private List<Map<String, Object>> sortAndPaginate(List<Map<String, Object>> results,
-                                                      int offset, int limit) {
-        // Сортируем по убыванию релевантности
-        results.sort((a, b) -> {
-            float relA = (float) a.get("relevance");
-            float relB = (float) b.get("relevance");
-            return Float.compare(relB, relA); // По убыванию
+    private List<SiteTask> findPagesByLemmas(List<LemmaEntity> lemmas, List<SiteEntity> sites) {
+        Map<Integer, SiteEntity> sitesById = new HashMap<>();
+        for (SiteEntity site : sites) {
+            sitesById.put(site.getId(), site);
+        }
+
+        // Группируем леммы по сайтам
+        Map<Integer, List<LemmaEntity>> lemmasBySite = new LinkedHashMap<>();
+        for (LemmaEntity lemma : lemmas) {
+            lemmasBySite
+                    .computeIfAbsent(lemma.getSite().getId(), k -> new ArrayList<>())
+                    .add(lemma);
+        }
+
+        // Страницы каждого сайта ищутся отдельной задачей
+        List<SiteTask> tasks = new ArrayList<>(lemmasBySite.size());
+        lemmasBySite.forEach((siteId, siteLemmas) -> {
+            SiteEntity site = sitesById.get(siteId);
+            tasks.add(new SiteTask(site != null ? site.getUrl() : String.valueOf(siteId),
+                    (phrases, k) -> collectSite(findPagesForSite(siteLemmas), phrases, k), null));
         });
+        return tasks;
+    }
 
-        // Пагинация
-        int end = Math.min(offset + limit, results.size());
-        if (offset >= results.size()) {
-            return Collections.emptyList();
+    private Matches findPagesForSite(List<LemmaEntity> siteLemmas) {
+        // Из БД читаются только id страниц и ранги (по возрастанию id), сущности страниц не загружаются
+        List<PostingCursor> postings = new ArrayList<>(siteLemmas.size());
+        for (LemmaEntity lemma : siteLemmas) {
+            postings.add(loadPostings(lemma));
         }
+        return PostingIntersection.intersect(postings);
+    }
 
-        return results.subList(offset, end);
+    private SortedArrayCursor loadPostings(LemmaEntity lemma) {
+        List<Object[]> rows = indexRepository.findPostingsByLemma(lemma);
+        int[] pageIds = new int[rows.size()];
+        float[] ranks = new float[rows.size()];
+        for (int i = 0; i < rows.size(); i++) {
+            pageIds[i] = ((Number) rows.get(i)[0]).intValue();
+            ranks[i] = ((Number) rows.get(i)[1]).floatValue();
+        }
+        return new SortedArrayCursor(pageIds, ranks, pageIds.length);
+    }
+
+    private Map<String, Object> toResult(PageEntity page, float relevance,
+                                         AnalyzedQuery analyzedQuery, Set<Integer> queryTermIds) {
+        Map<String, Object> result = new HashMap<>();
+        result.put("site", page.getSite().getUrl());
+        result.put("siteName", page.getSite().getName());
+        result.put("uri", page.getPath());
+        result.put("title", extractTitle(contentStore.readHtml(page)));
+        result.put("snippet", snippetService.generate(page, analyzedQuery.lemmas(), queryTermIds));
+        result.put("relevance", relevance);
+        return result;
     }
 
     private String extractTitle(String html) {
@@ -302,60 +819,6 @@ public class SearchService {
         return "Untitled";
     }
 
-    private String generateSnippet(String text, String query) {
-        if (text == null || text.isEmpty()) {
-            return "No content";
-        }
-
-        //log.info("generateSnippet: query='{}', text length={}", query, text.length());
-
-        Set<String> queryWords = extractQueryLemmas(query);
-        //log.info("Леммы из запроса: {}", queryWords);
-
-        // Ищем любое слово из запроса в тексте
-        for (String word : queryWords) {
-            String wordLower = word.toLowerCase();
-            String textLower = text.toLowerCase();
-
-            //log.info("Ищем '{}' в тексте...", word);
-            int index = textLower.indexOf(wordLower);
-            if (index != -1) {
-                //log.info("Найдено '{}' на позиции {}", word, index);
-
-                // Берем контекст вокруг найденного слова
-                int start = Math.max(0, index - 100);
-                int end = Math.min(text.length(), index + word.length() + 100);
-
-                String snippet = text.substring(start, end);
-
-                // выделение для русских слов
-                // Выделяем все вхождения с учетом регистра оригинала
-                StringBuilder highlighted = new StringBuilder();
-                Pattern pattern = Pattern.compile(Pattern.quote(word), Pattern.CASE_INSENSITIVE | Pattern.UNICODE_CASE);
-                Matcher matcher = pattern.matcher(snippet);
-
-                int lastEnd = 0;
-                while (matcher.find()) {
-                    highlighted.append(snippet, lastEnd, matcher.start());
-                    highlighted.append("<b>").append(snippet.substring(matcher.start(), matcher.end())).append("</b>");
-                    lastEnd = matcher.end();
-                }
-                highlighted.append(snippet.substring(lastEnd));
-
-                // Добавляем многоточия если обрезали
-                if (start > 0) highlighted.insert(0, "...");
-                if (end < text.length()) highlighted.append("...");
-
-                return highlighted.toString();
-            } /*else {
-                log.info("Слово '{}' НЕ НАЙДЕНО в тексте!", word);
-            }*/
-        }
-
-        // Если слова не найдены, берем начало текста
-        return text.substring(0, Math.min(200, text.length())) + "...";
-    }
-
     private Map<String, Object> createEmptyResponse() {
         Map<String, Object> response = new HashMap<>();
         response.put("result", true);
@@ -371,4 +834,26 @@ public class SearchService {
         response.put("data", data);
         return response;
     }
+
+    // Поиск по одному сайту: лучшие k страниц, прошедших проверку фраз
+    private interface SiteSearch {
+        SiteResult run(List<Phrase> phrases, int k);
+    }
+
+    // fallback - поиск по любому из слов, выполняется, только если всех слов нет ни на одном сайте (или null)
+    private record SiteTask(String siteUrl, SiteSearch search, SiteSearch fallback) {
+    }
+
+    // Лучшие страницы сайта по убыванию релевантности, число совпадений и наибольшая релевантность.
+    // exact = false: при отсечении часть совпадений не подсчитана
+    private record SiteResult(Matches top, int totalHits, float maxScore, boolean exact) {
+    }
+
+    // Ключ кэша ответов: запрос, фильтр сайта, окно выдачи и поколения сайтов
+    private record ResultKey(String query, String siteUrl, int offset, int limit, String generations) {
+    }
+
+    // Найденная страница и её абсолютная релевантность (сумма рангов лемм запроса)
+    private record PageHit(int pageId, float relevance) {
+    }
 }
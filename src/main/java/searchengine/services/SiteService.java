@@ -20,6 +20,7 @@ import java.util.stream.Collectors;
 @RequiredArgsConstructor
 public class SiteService {
     private final ConfigSiteRepository configSiteRepository;
+    private final IndexingService indexingService;
 
     /** Добавить новый сайт с полной валидацией */
     public AddSiteResponse addSite(AddSiteRequest request) {
@@ -109,6 +110,14 @@ public class SiteService {
             }
 
             ConfigSite site = siteOptional.get();
+
+            // Проиндексированные данные удаляются в фоне, поиск исключает сайт сразу
+            if (!indexingService.deleteSiteData(site.getUrl())) {
+                response.setResult(false);
+                response.setMessage("Site is being indexed, stop indexing first: " + siteName);
+                return response;
+            }
+
             deleteSite(site.getId());
             //log.info("Site deleted successfully");
 
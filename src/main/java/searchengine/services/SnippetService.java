@@ -0,0 +1,201 @@
+package searchengine.services;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Service;
+import searchengine.models.PageEntity;
+import searchengine.search.PagePositions;
+import searchengine.search.PagePositions.TermPositions;
+import searchengine.search.SentenceBoundaries;
+import searchengine.storage.ContentStore;
+
+import java.util.*;
+
+/**
+ * Сниппеты результатов поиска. Окно - несколько соседних предложений общей длиной
+ * не больше SNIPPET_LENGTH, лучшим считается окно, покрывающее больше разных лемм
+ * запроса (при равенстве - больше вхождений). Предложения с леммами находятся по
+ * позиционному индексу, без него - разбором предложений по порядку, пока окно не
+ * покроет все леммы, но не дальше MAX_SCANNED_SENTENCES предложений. Выделяются все формы слов, лемма которых входит в запрос
+ * (лемматизация через кэш); разбирается только текст выбранного окна
+ */
+@Service
+@RequiredArgsConstructor
+public class SnippetService {
+    private static final int SNIPPET_LENGTH = 300; // Наибольшая длина окна сниппета в символах
+    private static final int MAX_LEMMAS = Long.SIZE; // Леммы запроса сверх этого числа не учитываются в покрытии
+    private static final int MAX_SCANNED_SENTENCES = 100; // Без позиционного индекса разбирается не больше предложений
+
+    private final ContentStore contentStore;
+    private final LemmaService lemmaService;
+
+    public String generate(PageEntity page, Set<String> queryLemmas, Set<Integer> queryTermIds) {
+        String text = contentStore.readText(page);
+        if (text.isEmpty()) {
+            return "No content";
+        }
+        int[] starts = page.getSentencesRef() != null
+                ? SentenceBoundaries.decode(contentStore.readSentences(page))
+                : SentenceBoundaries.split(text); // Страница проиндексирована до сохранения границ
+        if (starts.length == 0) {
+            starts = new int[]{0};
+        }
+
+        SentenceCoverage coverage;
+        if (page.getPositionsRef() != null && !queryTermIds.isEmpty()) {
+            coverage = coverageFromPositions(contentStore.readPositions(page), queryTermIds, starts);
+        } else {
+            coverage = new SentenceCoverage(starts.length);
+            scanSentences(text, starts, queryLemmas, coverage);
+        }
+        return highlight(text, starts, bestWindow(text, starts, coverage), queryLemmas);
+    }
+
+    // Покрытие предложений: маска лемм запроса и число вхождений; вычисленные предложения отмечены
+    private static final class SentenceCoverage {
+        private final long[] masks;
+        private final int[] occurrences;
+        private int scanned; // Предложения [0, scanned) разобраны
+
+        private SentenceCoverage(int sentences) {
+            masks = new long[sentences];
+            occurrences = new int[sentences];
+        }
+    }
+
+    // Вхождения терминов запроса из позиционного индекса распределяются по предложениям
+    private static SentenceCoverage coverageFromPositions(byte[] data, Set<Integer> queryTermIds, int[] starts) {
+        SentenceCoverage coverage = new SentenceCoverage(starts.length);
+        coverage.scanned = starts.length;
+        Map<Integer, TermPositions> positions = PagePositions.decode(data, queryTermIds);
+        int bit = 0;
+        for (TermPositions term : positions.values()) {
+            long mask = bit < MAX_LEMMAS ? 1L << bit++ : 0;
+            for (int start : term.starts()) {
+                int sentence = SentenceBoundaries.sentenceOf(starts, start);
+                if (sentence >= 0) {
+                    coverage.masks[sentence] |= mask;
+                    coverage.occurrences[sentence]++;
+                }
+            }
+        }
+        return coverage;
+    }
+
+    // Разбор предложений по порядку; останавливается, когда окно из последних предложений
+    // покрывает все леммы запроса (лучше покрытие не станет), или на MAX_SCANNED_SENTENCES
+    private void scanSentences(String text, int[] starts, Set<String> queryLemmas, SentenceCoverage coverage) {
+        Map<String, Long> bits = lemmaBits(queryLemmas);
+        long all = 0;
+        for (long bit : bits.values()) {
+            all |= bit;
+        }
+        int limit = Math.min(starts.length, MAX_SCANNED_SENTENCES);
+        for (int i = 0; i < limit; i++) {
+            scanSentence(text, starts, i, bits, coverage);
+            if (windowMask(text, starts, i, coverage) == all) {
+                break;
+            }
+        }
+    }
+
+    // Объединение масок окна, которое заканчивается предложением last и умещается в SNIPPET_LENGTH
+    private static long windowMask(String text, int[] starts, int last, SentenceCoverage coverage) {
+        long mask = coverage.masks[last];
+        int end = end(text, starts, last);
+        for (int first = last - 1; first >= 0 && end - starts[first] <= SNIPPET_LENGTH; first--) {
+            mask |= coverage.masks[first];
+        }
+        return mask;
+    }
+
+    private void scanSentence(String text, int[] starts, int sentence, Map<String, Long> bits,
+                              SentenceCoverage coverage) {
+        String part = text.substring(starts[sentence], end(text, starts, sentence));
+        lemmaService.forEachWord(part, (word, lemma, start, end) -> {
+            Long bit = lemma != null ? bits.get(lemma) : null;
+            if (bit != null) {
+                coverage.masks[sentence] |= bit;
+                coverage.occurrences[sentence]++;
+            }
+        });
+        coverage.scanned = sentence + 1;
+    }
+
+    private static Map<String, Long> lemmaBits(Set<String> queryLemmas) {
+        Map<String, Long> bits = new HashMap<>(queryLemmas.size() * 2);
+        int bit = 0;
+        for (String lemma : queryLemmas) {
+            bits.put(lemma, bit < MAX_LEMMAS ? 1L << bit++ : 0L);
+        }
+        return bits;
+    }
+
+    // Лучшее окно [первое, последнее] из соседних предложений; предложения вне разобранной части не учитываются
+    private static int[] bestWindow(String text, int[] starts, SentenceCoverage coverage) {
+        int bestFirst = 0;
+        int bestLast = 0;
+        long bestScore = -1;
+        for (int first = 0; first < coverage.scanned; first++) {
+            if (coverage.masks[first] == 0 && first > 0) {
+                continue; // Окно с леммами начинается с предложения, где они есть
+            }
+            long mask = 0;
+            int occurrences = 0;
+            int last = first;
+            while (true) {
+                mask |= coverage.masks[last];
+                occurrences += coverage.occurrences[last];
+                long score = Long.bitCount(mask) * 1_000_000L + occurrences;
+                if (score > bestScore) {
+                    bestScore = score;
+                    bestFirst = first;
+                    bestLast = last;
+                }
+                if (last + 1 >= coverage.scanned || end(text, starts, last + 1) - starts[first] > SNIPPET_LENGTH) {
+                    break;
+                }
+                last++;
+            }
+        }
+        if (bestScore <= 0) {
+            // Слов запроса в тексте нет: начало текста
+            int last = 0;
+            while (last + 1 < starts.length && end(text, starts, last + 1) <= SNIPPET_LENGTH) {
+                last++;
+            }
+            return new int[]{0, last};
+        }
+        return new int[]{bestFirst, bestLast};
+    }
+
+    private String highlight(String text, int[] starts, int[] window, Set<String> queryLemmas) {
+        int from = starts[window[0]];
+        int to = end(text, starts, window[1]);
+        // Одно предложение длиннее окна (например, длинное слово без пробелов) обрезается
+        to = Math.min(to, from + SNIPPET_LENGTH * 2);
+        String part = text.substring(from, to);
+
+        StringBuilder snippet = new StringBuilder(part.length() + 64);
+        if (from > 0) snippet.append("...");
+        int[] lastEnd = {0};
+        lemmaService.forEachWord(part, (word, lemma, start, end) -> {
+            if (lemma != null && queryLemmas.contains(lemma)) {
+                snippet.append(part, lastEnd[0], start);
+                snippet.append("<b>").append(part, start, end).append("</b>");
+                lastEnd[0] = end;
+            }
+        });
+        snippet.append(part, lastEnd[0], part.length());
+        if (to < text.length()) snippet.append("...");
+        return snippet.toString();
+    }
+
+    // Конец предложения: начало следующего без пробелов перед ним
+    private static int end(String text, int[] starts, int sentence) {
+        int end = sentence + 1 < starts.length ? starts[sentence + 1] : text.length();
+        while (end > starts[sentence] && Character.isWhitespace(text.charAt(end - 1))) {
+            end--;
+        }
+        return end;
+    }
+}
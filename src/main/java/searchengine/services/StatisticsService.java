@@ -7,7 +7,6 @@ import searchengine.dto.statistics.StatisticsSite;
 import searchengine.models.*;
 import searchengine.repository.ConfigSiteRepository;
 import searchengine.repository.SiteRepository;
-import searchengine.repository.PageRepository;
 import searchengine.repository.LemmaRepository;
 
 import java.util.ArrayList;
@@ -19,8 +18,8 @@ import java.util.Optional;
 public class StatisticsService {
     private final ConfigSiteRepository configSiteRepository;
     private final SiteRepository siteRepository;
-    private final PageRepository pageRepository;
     private final LemmaRepository lemmaRepository;
+    private final CorpusStatisticsService corpusStatisticsService;
 
     public StatisticsResponse getStatistics() {
         // Получаем все сайты из БД
@@ -55,13 +54,14 @@ public class StatisticsService {
                         ? siteEntity.getStatusTime().toEpochSecond(java.time.ZoneOffset.UTC) * 1000
                         : 0);
 
-                // Количество страниц
-                long pagesCount = pageRepository.countBySite(siteEntity);
+                // Количество страниц (в поколении, которое обслуживает поиск), из статистики корпуса
+                long pagesCount = corpusStatisticsService.pageCount(siteEntity);
                 siteStats.setPages((int) pagesCount);
                 totalPagesCount += pagesCount;
 
                 // Количество лемм
-                long lemmasCount = lemmaRepository.countBySite(siteEntity);
+                long lemmasCount = lemmaRepository.countBySiteAndGeneration(siteEntity,
+                        siteEntity.getActiveGeneration());
                 siteStats.setLemmas((int) lemmasCount);
                 totalLemmasCount += lemmasCount;
 
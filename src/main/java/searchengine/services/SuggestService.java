@@ -0,0 +1,316 @@
+package searchengine.services;
+
+import lombok.extern.slf4j.Slf4j;
+import org.apache.lucene.store.*;
+import org.apache.lucene.util.BytesRef;
+import org.apache.lucene.util.BytesRefBuilder;
+import org.apache.lucene.util.IntsRefBuilder;
+import org.apache.lucene.util.fst.*;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import searchengine.config.ConfigIndexing;
+import searchengine.config.ConfigSearch;
+import searchengine.models.SiteEntity;
+import searchengine.repository.SiteRepository;
+import searchengine.utils.IntIntHashMap;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.stream.Stream;
+
+/**
+ * Подсказки по началу слова: автомат (FST Lucene) над леммами активного поколения
+ * каждого сайта, вес леммы - число страниц с ней. Лучшие продолжения префикса
+ * ищутся обходом автомата (TopNSearcher), без перебора словаря.
+ * Автомат сайта перестраивается при переключении его поколения и сохраняется
+ * в файл {@code <siteId>-<поколение>.fst}; при старте файлы отображаются в память
+ * и читаются с диска, поэтому подсказки доступны сразу
+ */
+@Slf4j
+@Service
+public class SuggestService {
+    private static final String EXTENSION = ".fst";
+    private static final PositiveIntOutputs OUTPUTS = PositiveIntOutputs.getSingleton();
+
+    private final ConfigSearch configSearch;
+    private final ConfigIndexing configIndexing;
+    private final SiteRepository siteRepository;
+    private final TermDictionaryService termDictionaryService;
+    private final JdbcTemplate jdbcTemplate;
+
+    private final Map<Integer, SiteSuggester> suggesters = new ConcurrentHashMap<>();
+    private MMapDirectory directory;
+    private final ExecutorService builder = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "SuggestBuilder");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    // Автомат поколения сайта; выход - Integer.MAX_VALUE - вес, чтобы кратчайший путь был самым частым
+    private record SiteSuggester(int generation, FST<Long> fst, long sizeInBytes) {
+    }
+
+    /** Подсказка: лемма и число страниц с ней */
+    public record Suggestion(String lemma, int weight) {
+    }
+
+    public SuggestService(ConfigSearch configSearch,
+                          ConfigIndexing configIndexing,
+                          SiteRepository siteRepository,
+                          TermDictionaryService termDictionaryService,
+                          JdbcTemplate jdbcTemplate) {
+        this.configSearch = configSearch;
+        this.configIndexing = configIndexing;
+        this.siteRepository = siteRepository;
+        this.termDictionaryService = termDictionaryService;
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    @PostConstruct
+    public void init() {
+        String path = configSearch.getSuggestPath();
+        if (path == null || path.isBlank()) {
+            return;
+        }
+        try {
+            Path dir = Paths.get(path);
+            Files.createDirectories(dir);
+            directory = new MMapDirectory(dir);
+            // Заменённые автоматы могут ещё читаться поиском: отображение освобождает сборщик мусора
+            directory.setUseUnmap(false);
+            try (Stream<Path> files = Files.list(dir)) {
+                files.map(file -> file.getFileName().toString())
+                        .filter(name -> name.endsWith(EXTENSION))
+                        .sorted()
+                        .forEach(this::read);
+            }
+        } catch (IOException e) {
+            log.warn("Не удалось открыть каталог подсказок {}: {}", path, e.getMessage());
+        }
+    }
+
+    /** Сайты без автомата текущего поколения (первый запуск, файл потерян) получают его в фоне */
+    @EventListener(ApplicationReadyEvent.class)
+    public void buildMissing() {
+        builder.execute(() -> {
+            for (SiteEntity site : siteRepository.findByDeletedFalse()) {
+                SiteSuggester current = suggesters.get(site.getId());
+                if (current != null && current.generation() == site.getActiveGeneration()) {
+                    continue;
+                }
+                try {
+                    Map<String, Integer> weights = new HashMap<>();
+                    jdbcTemplate.query("SELECT t.lemma, l.frequency FROM lemma l JOIN term t ON t.id = l.term_id " +
+                                    "WHERE l.site_id = ? AND l.generation = ? AND l.stop_lemma = FALSE",
+                            rs -> {
+                                weights.put(rs.getString(1), rs.getInt(2));
+                            }, site.getId(), site.getActiveGeneration());
+                    publish(site.getId(), site.getActiveGeneration(), weights);
+                } catch (RuntimeException e) {
+                    log.warn("Не удалось построить подсказки сайта {}: {}", site.getUrl(), e.getMessage());
+                }
+            }
+        });
+    }
+
+    /** Индексатор переключил сайт на новое поколение: df-таблица содержит все его термины */
+    public void onGenerationCommitted(SiteEntity site, long totalPages, IntIntHashMap siteLemmas) {
+        Map<String, Integer> weights = new HashMap<>(siteLemmas.size() * 2);
+        siteLemmas.forEach((termId, documentFrequency) -> {
+            // Стоп-леммы не ищутся, подсказывать их незачем
+            if (documentFrequency < totalPages * configIndexing.getStopLemmaRatio()) {
+                String lemma = termDictionaryService.lemmaOf(termId);
+                if (lemma != null) {
+                    weights.put(lemma, documentFrequency);
+                }
+            }
+        });
+        publish(site.getId(), site.getActiveGeneration(), weights);
+    }
+
+    public void onSiteRemoved(int siteId) {
+        SiteSuggester removed = suggesters.remove(siteId);
+        if (removed != null) {
+            delete(fileName(siteId, removed.generation()));
+        }
+    }
+
+    /**
+     * До limit лемм, начинающихся с prefix, по убыванию веса; веса сайтов складываются.
+     * С каждого сайта берётся limit × число сайтов лучших лемм, чтобы лемма, средняя
+     * на каждом сайте, но частая в сумме, не терялась; при очень неравных сайтах
+     * порядок по-прежнему приближённый
+     */
+    public List<Suggestion> suggest(String prefix, List<SiteEntity> sites, int limit) {
+        if (prefix.isEmpty() || limit <= 0) {
+            return List.of();
+        }
+        byte[] key = prefix.getBytes(StandardCharsets.UTF_8);
+        Map<String, Integer> merged = new HashMap<>();
+        int perSite = (int) Math.min((long) limit * sites.size(), Integer.MAX_VALUE);
+        for (SiteEntity site : sites) {
+            SiteSuggester suggester = suggesters.get(site.getId());
+            if (suggester == null || suggester.generation() != site.getActiveGeneration()) {
+                continue;
+            }
+            try {
+                lookup(suggester.fst(), key, perSite, merged);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+        List<Suggestion> suggestions = new ArrayList<>(merged.size());
+        merged.forEach((lemma, weight) -> suggestions.add(new Suggestion(lemma, weight)));
+        suggestions.sort(Comparator.comparingInt(Suggestion::weight).reversed().thenComparing(Suggestion::lemma));
+        return suggestions.size() > limit ? suggestions.subList(0, limit) : suggestions;
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        long bytes = 0;
+        for (SiteSuggester suggester : suggesters.values()) {
+            bytes += suggester.sizeInBytes();
+        }
+        stats.put("sites", suggesters.size());
+        stats.put("bytes", bytes);
+        return stats;
+    }
+
+    // Переход по байтам префикса, затем лучшие limit продолжений из достигнутого состояния
+    private static void lookup(FST<Long> fst, byte[] key, int limit, Map<String, Integer> merged) throws IOException {
+        FST.BytesReader reader = fst.getBytesReader();
+        FST.Arc<Long> arc = fst.getFirstArc(new FST.Arc<>());
+        long output = 0;
+        for (byte b : key) {
+            if (fst.findTargetArc(b & 0xFF, arc, arc, reader) == null) {
+                return; // Слов с таким началом на сайте нет
+            }
+            output += arc.output();
+        }
+
+        Util.TopNSearcher<Long> searcher = new Util.TopNSearcher<>(fst, limit, limit, Comparator.naturalOrder());
+        searcher.addStartPaths(arc, output, true, new IntsRefBuilder());
+        BytesRefBuilder lemma = new BytesRefBuilder();
+        for (Util.Result<Long> result : searcher.search()) {
+            // Продолжение может начинаться с середины символа UTF-8, поэтому склеиваются байты
+            lemma.copyBytes(key, 0, key.length);
+            for (int i = 0; i < result.input.length; i++) {
+                lemma.append((byte) result.input.ints[result.input.offset + i]);
+            }
+            int weight = (int) (Integer.MAX_VALUE - result.output);
+            merged.merge(lemma.get().utf8ToString(), weight, Integer::sum);
+        }
+    }
+
+    private void publish(int siteId, int generation, Map<String, Integer> weights) {
+        FST<Long> fst;
+        try {
+            fst = build(weights);
+        } catch (IOException e) {
+            log.warn("Не удалось построить подсказки сайта {}: {}", siteId, e.getMessage());
+            return;
+        }
+        if (fst == null) {
+            return; // На сайте нет ни одной леммы
+        }
+        // Автомат более старого поколения (фоновая сборка) не вытесняет построенный индексатором
+        SiteSuggester candidate = new SiteSuggester(generation, fst, fst.ramBytesUsed());
+        SiteSuggester previous = suggesters.get(siteId);
+        if (suggesters.merge(siteId, candidate,
+                (current, built) -> built.generation() >= current.generation() ? built : current) == candidate) {
+            write(siteId, generation, fst);
+            if (previous != null && previous.generation() != generation) {
+                delete(fileName(siteId, previous.generation()));
+            }
+        }
+    }
+
+    // Леммы добавляются в автомат по возрастанию байтов UTF-8
+    private static FST<Long> build(Map<String, Integer> weights) throws IOException {
+        List<BytesRef> lemmas = new ArrayList<>(weights.size());
+        for (String lemma : weights.keySet()) {
+            lemmas.add(new BytesRef(lemma));
+        }
+        Collections.sort(lemmas);
+        Builder<Long> fstBuilder = new Builder<>(FST.INPUT_TYPE.BYTE1, OUTPUTS);
+        IntsRefBuilder scratch = new IntsRefBuilder();
+        for (BytesRef lemma : lemmas) {
+            int weight = Math.max(weights.get(lemma.utf8ToString()), 0);
+            fstBuilder.add(Util.toIntsRef(lemma, scratch), (long) Integer.MAX_VALUE - weight);
+        }
+        return fstBuilder.finish();
+    }
+
+    private void read(String name) {
+        String[] parts = name.substring(0, name.length() - EXTENSION.length()).split("-");
+        if (parts.length != 2) {
+            return;
+        }
+        try {
+            int siteId = Integer.parseInt(parts[0]);
+            int generation = Integer.parseInt(parts[1]);
+            // Автомат остаётся в файле, отображённом в память; входной поток живёт вместе с автоматом
+            IndexInput in = directory.openInput(name, IOContext.READ);
+            FST<Long> fst = new FST<>(in, in, OUTPUTS, new OffHeapFSTStore());
+            SiteSuggester loaded = new SiteSuggester(generation, fst, in.length());
+            SiteSuggester previous = suggesters.get(siteId);
+            if (suggesters.merge(siteId, loaded, (current, candidate) ->
+                    candidate.generation() >= current.generation() ? candidate : current) != loaded) {
+                delete(name); // Файл устаревшего поколения
+            } else if (previous != null) {
+                delete(fileName(siteId, previous.generation()));
+            }
+        } catch (IOException | RuntimeException e) {
+            log.warn("Файл подсказок {} повреждён и будет построен заново: {}", name, e.getMessage());
+        }
+    }
+
+    private void write(int siteId, int generation, FST<Long> fst) {
+        if (directory == null) {
+            return;
+        }
+        Path dir = directory.getDirectory();
+        Path file = dir.resolve(fileName(siteId, generation));
+        Path temp = dir.resolve(fileName(siteId, generation) + ".tmp");
+        try {
+            try (OutputStreamDataOutput out = new OutputStreamDataOutput(
+                    new BufferedOutputStream(Files.newOutputStream(temp)))) {
+                fst.save(out, out);
+            }
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            log.warn("Не удалось сохранить подсказки сайта {}: {}", siteId, e.getMessage());
+        }
+    }
+
+    private void delete(String name) {
+        if (directory == null) {
+            return;
+        }
+        try {
+            Files.deleteIfExists(directory.getDirectory().resolve(name));
+        } catch (IOException e) {
+            // Файл ещё открыт (Windows): устаревший файл будет удалён при следующем старте
+        }
+    }
+
+    private static String fileName(int siteId, int generation) {
+        return siteId + "-" + generation + EXTENSION;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        builder.shutdownNow();
+    }
+}
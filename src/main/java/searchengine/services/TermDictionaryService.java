@@ -0,0 +1,109 @@
+package searchengine.services;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Service;
+import searchengine.models.TermEntity;
+import searchengine.repository.TermRepository;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Глобальный словарь лемм: каждая лемма получает один целочисленный id на все сайты.
+ * Таблица lemma хранит статистику по (site_id, term_id), а индексация и поиск
+ * работают с id вместо строк
+ */
+@Service
+@RequiredArgsConstructor
+public class TermDictionaryService {
+    private final TermRepository termRepository;
+
+    private final Map<String, Integer> idsByLemma = new ConcurrentHashMap<>();
+    private final Map<Integer, String> lemmasById = new ConcurrentHashMap<>();
+    private final Object createLock = new Object();
+
+    /** Получить id леммы, создав запись словаря при необходимости */
+    public int idOf(String lemma) {
+        return idsOf(List.of(lemma)).get(lemma);
+    }
+
+    /** Получить id для набора лемм, отсутствующие в словаре создаются */
+    public Map<String, Integer> idsOf(Collection<String> lemmas) {
+        Map<String, Integer> result = new HashMap<>(lemmas.size() * 2);
+        List<String> missing = collectKnown(lemmas, result);
+        if (missing.isEmpty()) {
+            return result;
+        }
+
+        synchronized (createLock) {
+            // Пока ждали блокировку, часть лемм могли добавить другие потоки
+            missing = collectKnown(missing, result);
+            if (missing.isEmpty()) {
+                return result;
+            }
+            loadFromDatabase(missing);
+            missing = collectKnown(missing, result);
+
+            List<TermEntity> created = new ArrayList<>(missing.size());
+            for (String lemma : missing) {
+                TermEntity term = new TermEntity();
+                term.setLemma(lemma);
+                created.add(term);
+            }
+            for (TermEntity term : termRepository.saveAll(created)) {
+                remember(term);
+                result.put(term.getLemma(), term.getId());
+            }
+        }
+        return result;
+    }
+
+    /** Найти id существующих лемм без создания новых (для поиска) */
+    public Map<String, Integer> findIds(Collection<String> lemmas) {
+        Map<String, Integer> result = new HashMap<>(lemmas.size() * 2);
+        List<String> missing = collectKnown(lemmas, result);
+        if (!missing.isEmpty()) {
+            loadFromDatabase(missing);
+            collectKnown(missing, result);
+        }
+        return result;
+    }
+
+    /** Текст леммы по id */
+    public String lemmaOf(int termId) {
+        String lemma = lemmasById.get(termId);
+        if (lemma == null) {
+            lemma = termRepository.findById(termId)
+                    .map(term -> {
+                        remember(term);
+                        return term.getLemma();
+                    })
+                    .orElse(null);
+        }
+        return lemma;
+    }
+
+    private List<String> collectKnown(Collection<String> lemmas, Map<String, Integer> result) {
+        List<String> missing = new ArrayList<>();
+        for (String lemma : lemmas) {
+            Integer id = idsByLemma.get(lemma);
+            if (id != null) {
+                result.put(lemma, id);
+            } else {
+                missing.add(lemma);
+            }
+        }
+        return missing;
+    }
+
+    private void loadFromDatabase(Collection<String> lemmas) {
+        for (TermEntity term : termRepository.findByLemmaIn(lemmas)) {
+            remember(term);
+        }
+    }
+
+    private void remember(TermEntity term) {
+        idsByLemma.put(term.getLemma(), term.getId());
+        lemmasById.put(term.getId(), term.getLemma());
+    }
+}
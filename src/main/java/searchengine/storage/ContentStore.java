@@ -0,0 +1,295 @@
+package searchengine.storage;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+import searchengine.config.ConfigContentStore;
+import searchengine.models.PageEntity;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Stream;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Хранилище содержимого страниц вне БД.
+ * Тексты сжимаются deflate и дописываются в файлы-сегменты каталога
+ * {@code <path>/<siteId>/<generation>/}, чтение идёт через отображение файла в память.
+ * Ссылка на запись: номер сегмента (старшие 16 бит) и смещение в нём (младшие 48 бит).
+ * Поколение индекса удаляется вместе со своим каталогом
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class ContentStore {
+    private static final int HEADER_SIZE = 8; // длина сжатых данных + длина исходных данных
+    private static final int OFFSET_BITS = 48;
+    private static final long OFFSET_MASK = (1L << OFFSET_BITS) - 1;
+
+    private final ConfigContentStore config;
+
+    private final Map<String, SegmentWriter> writers = new ConcurrentHashMap<>();
+    private final Map<Path, MappedByteBuffer> mappedSegments = new ConcurrentHashMap<>();
+    private Map<RecordKey, String> cache;
+
+    @PostConstruct
+    public void init() {
+        int cacheSize = Math.max(1, config.getCacheSize());
+        cache = Collections.synchronizedMap(new LinkedHashMap<>(cacheSize, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<RecordKey, String> eldest) {
+                return size() > cacheSize;
+            }
+        });
+    }
+
+    /** Записать содержимое, вернуть ссылку на запись (null для пустого содержимого) */
+    public Long write(int siteId, int generation, String content) {
+        if (content == null || content.isEmpty()) {
+            return null;
+        }
+        return write(siteId, generation, content.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /** Записать двоичные данные (например, позиционный индекс страницы) */
+    public Long write(int siteId, int generation, byte[] data) {
+        if (data == null || data.length == 0) {
+            return null;
+        }
+        byte[] record = compress(data);
+        SegmentWriter writer = writers.computeIfAbsent(key(siteId, generation),
+                k -> new SegmentWriter(generationDir(siteId, generation)));
+        return writer.append(record);
+    }
+
+    public String readHtml(PageEntity page) {
+        return read(page.getSite().getId(), page.getGeneration(), page.getHtmlRef());
+    }
+
+    public String readText(PageEntity page) {
+        return read(page.getSite().getId(), page.getGeneration(), page.getTextRef());
+    }
+
+    public byte[] readPositions(PageEntity page) {
+        return readBytes(page.getSite().getId(), page.getGeneration(), page.getPositionsRef());
+    }
+
+    public byte[] readSentences(PageEntity page) {
+        return readBytes(page.getSite().getId(), page.getGeneration(), page.getSentencesRef());
+    }
+
+    /** Прочитать запись по ссылке, распакованные записи кэшируются */
+    public String read(int siteId, int generation, Long ref) {
+        if (ref == null) {
+            return "";
+        }
+        RecordKey recordKey = new RecordKey(siteId, generation, ref);
+        String cached = cache.get(recordKey);
+        if (cached != null) {
+            return cached;
+        }
+
+        String content = new String(readBytes(siteId, generation, ref), StandardCharsets.UTF_8);
+        cache.put(recordKey, content);
+        return content;
+    }
+
+    /** Прочитать двоичную запись по ссылке (без кэширования) */
+    public byte[] readBytes(int siteId, int generation, Long ref) {
+        if (ref == null) {
+            return new byte[0];
+        }
+        int segment = (int) (ref >>> OFFSET_BITS);
+        int offset = (int) (ref & OFFSET_MASK);
+        Path segmentPath = generationDir(siteId, generation).resolve(segmentName(segment));
+
+        ByteBuffer buffer = mapped(segmentPath, offset + HEADER_SIZE).duplicate();
+        buffer.position(offset);
+        int compressedLength = buffer.getInt();
+        int rawLength = buffer.getInt();
+        buffer = mapped(segmentPath, offset + HEADER_SIZE + compressedLength).duplicate();
+        buffer.position(offset + HEADER_SIZE);
+        buffer.limit(offset + HEADER_SIZE + compressedLength);
+
+        return decompress(buffer, rawLength);
+    }
+
+    /** Удалить все записи поколения индекса сайта */
+    public void dropGeneration(int siteId, int generation) {
+        SegmentWriter writer = writers.remove(key(siteId, generation));
+        if (writer != null) {
+            writer.close();
+        }
+        Path dir = generationDir(siteId, generation);
+        mappedSegments.keySet().removeIf(path -> path.startsWith(dir));
+        cache.keySet().removeIf(k -> k.siteId == siteId && k.generation == generation);
+        deleteRecursively(dir);
+    }
+
+    /** Удалить каталог сайта, если в нём не осталось поколений */
+    public void dropSiteIfEmpty(int siteId) {
+        Path dir = Paths.get(config.getPath(), String.valueOf(siteId));
+        try (Stream<Path> children = Files.list(dir)) {
+            if (children.findAny().isEmpty()) {
+                Files.delete(dir);
+            }
+        } catch (NoSuchFileException e) {
+            // уже удалён
+        } catch (IOException e) {
+            log.warn("Не удалось удалить каталог {}: {}", dir, e.getMessage());
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        writers.values().forEach(SegmentWriter::close);
+        writers.clear();
+    }
+
+    private MappedByteBuffer mapped(Path segmentPath, long requiredSize) {
+        MappedByteBuffer buffer = mappedSegments.get(segmentPath);
+        if (buffer != null && buffer.capacity() >= requiredSize) {
+            return buffer;
+        }
+        // Активный сегмент растёт: отображаем заново по текущему размеру файла
+        try (FileChannel channel = FileChannel.open(segmentPath, StandardOpenOption.READ)) {
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            mappedSegments.put(segmentPath, buffer);
+            return buffer;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Ошибка чтения сегмента " + segmentPath, e);
+        }
+    }
+
+    private static byte[] compress(byte[] raw) {
+        Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION);
+        try {
+            deflater.setInput(raw);
+            deflater.finish();
+            byte[] out = new byte[HEADER_SIZE + Math.max(64, raw.length / 2)];
+            int length = HEADER_SIZE;
+            while (!deflater.finished()) {
+                if (length == out.length) {
+                    out = Arrays.copyOf(out, out.length * 2);
+                }
+                length += deflater.deflate(out, length, out.length - length);
+            }
+            ByteBuffer.wrap(out).putInt(length - HEADER_SIZE).putInt(raw.length);
+            return Arrays.copyOf(out, length);
+        } finally {
+            deflater.end();
+        }
+    }
+
+    private static byte[] decompress(ByteBuffer compressed, int rawLength) {
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(compressed);
+            byte[] raw = new byte[rawLength];
+            int length = 0;
+            while (length < rawLength && !inflater.finished()) {
+                length += inflater.inflate(raw, length, rawLength - length);
+            }
+            return raw;
+        } catch (DataFormatException e) {
+            throw new IllegalStateException("Повреждённая запись хранилища содержимого", e);
+        } finally {
+            inflater.end();
+        }
+    }
+
+    private Path generationDir(int siteId, int generation) {
+        return Paths.get(config.getPath(), String.valueOf(siteId), String.valueOf(generation));
+    }
+
+    private static String key(int siteId, int generation) {
+        return siteId + "/" + generation;
+    }
+
+    private static String segmentName(int segment) {
+        return String.format("%05d.seg", segment);
+    }
+
+    private static void deleteRecursively(Path dir) {
+        if (!Files.exists(dir)) {
+            return;
+        }
+        try (Stream<Path> paths = Files.walk(dir)) {
+            paths.sorted(Comparator.reverseOrder()).forEach(path -> {
+                try {
+                    Files.delete(path);
+                } catch (IOException e) {
+                    log.warn("Не удалось удалить {}: {}", path, e.getMessage());
+                    path.toFile().deleteOnExit();
+                }
+            });
+        } catch (IOException e) {
+            log.warn("Не удалось удалить каталог {}: {}", dir, e.getMessage());
+        }
+    }
+
+    private record RecordKey(int siteId, int generation, long ref) {
+    }
+
+    // Дописывает записи в сегменты одного поколения, новый сегмент начинается по достижении segmentSize
+    private class SegmentWriter {
+        private final Path dir;
+        private FileChannel channel;
+        private int segment = -1;
+        private long position;
+
+        private SegmentWriter(Path dir) {
+            this.dir = dir;
+        }
+
+        private synchronized long append(byte[] record) {
+            try {
+                if (channel == null || position + record.length > config.getSegmentSize()) {
+                    openNextSegment();
+                }
+                long offset = position;
+                ByteBuffer buffer = ByteBuffer.wrap(record);
+                while (buffer.hasRemaining()) {
+                    position += channel.write(buffer, position);
+                }
+                return ((long) segment << OFFSET_BITS) | offset;
+            } catch (IOException e) {
+                throw new UncheckedIOException("Ошибка записи в хранилище содержимого " + dir, e);
+            }
+        }
+
+        private void openNextSegment() throws IOException {
+            close();
+            Files.createDirectories(dir);
+            // После перезапуска продолжаем с первого свободного номера сегмента
+            do {
+                segment++;
+            } while (Files.exists(dir.resolve(segmentName(segment))));
+            channel = FileChannel.open(dir.resolve(segmentName(segment)),
+                    StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+            position = 0;
+        }
+
+        private synchronized void close() {
+            if (channel != null) {
+                try {
+                    channel.close();
+                } catch (IOException e) {
+                    log.warn("Ошибка закрытия сегмента в {}: {}", dir, e.getMessage());
+                }
+                channel = null;
+            }
+        }
+    }
+}
@@ -0,0 +1,91 @@
+package searchengine.utils;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+/**
+ * Фильтр Блума над строками: «точно нет» или «возможно есть».
+ * k позиций бита получаются из двух половин одного 64-битного хэша
+ * (схема Кирша-Митценмахера), поэтому проверка не создаёт объектов
+ */
+public class BloomFilter {
+    private final long[] bits;
+    private final long bitCount;
+    private final int hashCount;
+
+    private BloomFilter(long[] bits, int hashCount) {
+        this.bits = bits;
+        this.bitCount = (long) bits.length * Long.SIZE;
+        this.hashCount = hashCount;
+    }
+
+    /** Фильтр для expectedSize строк с долей ложных срабатываний не выше falsePositiveRate */
+    public static BloomFilter create(int expectedSize, double falsePositiveRate) {
+        int size = Math.max(expectedSize, 1);
+        long optimalBits = (long) Math.ceil(-size * Math.log(falsePositiveRate) / (Math.log(2) * Math.log(2)));
+        int words = (int) Math.max(1, (optimalBits + Long.SIZE - 1) / Long.SIZE);
+        int hashCount = Math.max(1, (int) Math.round((double) words * Long.SIZE / size * Math.log(2)));
+        return new BloomFilter(new long[words], Math.min(hashCount, 16));
+    }
+
+    public void put(String value) {
+        long hash = hash(value);
+        int h1 = (int) hash;
+        int h2 = (int) (hash >>> 32);
+        for (int i = 1; i <= hashCount; i++) {
+            long bit = Math.floorMod(h1 + i * h2, bitCount);
+            bits[(int) (bit >>> 6)] |= 1L << bit;
+        }
+    }
+
+    public boolean mightContain(String value) {
+        long hash = hash(value);
+        int h1 = (int) hash;
+        int h2 = (int) (hash >>> 32);
+        for (int i = 1; i <= hashCount; i++) {
+            long bit = Math.floorMod(h1 + i * h2, bitCount);
+            if ((bits[(int) (bit >>> 6)] & (1L << bit)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** Объём битового массива, байт */
+    public long sizeInBytes() {
+        return (long) bits.length * Long.BYTES;
+    }
+
+    public void writeTo(DataOutputStream out) throws IOException {
+        out.writeInt(hashCount);
+        out.writeInt(bits.length);
+        for (long word : bits) {
+            out.writeLong(word);
+        }
+    }
+
+    public static BloomFilter readFrom(DataInputStream in) throws IOException {
+        int hashCount = in.readInt();
+        long[] bits = new long[in.readInt()];
+        for (int i = 0; i < bits.length; i++) {
+            bits[i] = in.readLong();
+        }
+        return new BloomFilter(bits, hashCount);
+    }
+
+    // 64-битный FNV-1a по символам с финальным перемешиванием (как в SplitMix64)
+    private static long hash(String value) {
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < value.length(); i++) {
+            hash ^= value.charAt(i);
+            hash *= 0x100000001b3L;
+        }
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+}
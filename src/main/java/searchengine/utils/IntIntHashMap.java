@@ -0,0 +1,156 @@
+package searchengine.utils;
+
+import java.util.Arrays;
+
+/**
+ * Хеш-таблица int -> int с открытой адресацией и линейным пробированием.
+ * Ключи и значения лежат в двух массивах примитивов: нет упаковки Integer
+ * и отдельного узла на каждую запись, как в HashMap. Не потокобезопасна
+ */
+public class IntIntHashMap {
+    private static final float LOAD_FACTOR = 0.6f;
+
+    private int[] keys;
+    private int[] values;
+    private int mask;
+    private int size;
+    private int resizeAt;
+    // Ключ 0 занимает отдельный слот, так как 0 в массиве ключей означает свободную ячейку
+    private boolean hasZeroKey;
+    private int zeroValue;
+
+    public IntIntHashMap() {
+        this(16);
+    }
+
+    public IntIntHashMap(int expectedSize) {
+        allocate(capacityFor(expectedSize));
+    }
+
+    /** Прибавить delta к значению ключа (отсутствующий ключ считается нулём), вернуть новое значение */
+    public int addTo(int key, int delta) {
+        if (key == 0) {
+            if (!hasZeroKey) {
+                hasZeroKey = true;
+                size++;
+            }
+            return zeroValue += delta;
+        }
+        int slot = slot(key);
+        while (keys[slot] != 0) {
+            if (keys[slot] == key) {
+                return values[slot] += delta;
+            }
+            slot = (slot + 1) & mask;
+        }
+        keys[slot] = key;
+        values[slot] = delta;
+        if (++size > resizeAt) {
+            rehash(keys.length << 1);
+        }
+        return delta;
+    }
+
+    public void put(int key, int value) {
+        addTo(key, value - get(key));
+    }
+
+    /** Значение ключа или 0, если ключа нет */
+    public int get(int key) {
+        if (key == 0) {
+            return hasZeroKey ? zeroValue : 0;
+        }
+        int slot = slot(key);
+        while (keys[slot] != 0) {
+            if (keys[slot] == key) {
+                return values[slot];
+            }
+            slot = (slot + 1) & mask;
+        }
+        return 0;
+    }
+
+    public boolean containsKey(int key) {
+        if (key == 0) {
+            return hasZeroKey;
+        }
+        int slot = slot(key);
+        while (keys[slot] != 0) {
+            if (keys[slot] == key) {
+                return true;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return false;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public void clear() {
+        Arrays.fill(keys, 0);
+        hasZeroKey = false;
+        zeroValue = 0;
+        size = 0;
+    }
+
+    public void forEach(IntIntConsumer consumer) {
+        if (hasZeroKey) {
+            consumer.accept(0, zeroValue);
+        }
+        for (int i = 0; i < keys.length; i++) {
+            if (keys[i] != 0) {
+                consumer.accept(keys[i], values[i]);
+            }
+        }
+    }
+
+    /** Прибавить к этой таблице все значения другой */
+    public void addAll(IntIntHashMap other) {
+        other.forEach(this::addTo);
+    }
+
+    @FunctionalInterface
+    public interface IntIntConsumer {
+        void accept(int key, int value);
+    }
+
+    private int slot(int key) {
+        int h = key * 0x9E3779B9;
+        return (h ^ (h >>> 16)) & mask;
+    }
+
+    private void rehash(int capacity) {
+        int[] oldKeys = keys;
+        int[] oldValues = values;
+        allocate(capacity);
+        for (int i = 0; i < oldKeys.length; i++) {
+            int key = oldKeys[i];
+            if (key != 0) {
+                int slot = slot(key);
+                while (keys[slot] != 0) {
+                    slot = (slot + 1) & mask;
+                }
+                keys[slot] = key;
+                values[slot] = oldValues[i];
+            }
+        }
+    }
+
+    private void allocate(int capacity) {
+        keys = new int[capacity];
+        values = new int[capacity];
+        mask = capacity - 1;
+        resizeAt = (int) (capacity * LOAD_FACTOR);
+    }
+
+    static int capacityFor(int expectedSize) {
+        int capacity = Integer.highestOneBit(Math.max(4, (int) (expectedSize / LOAD_FACTOR)) - 1) << 1;
+        return Math.max(capacity, 8);
+    }
+}
@@ -0,0 +1,249 @@
+package searchengine.utils;
+
+import lombok.extern.slf4j.Slf4j;
+import org.apache.lucene.morphology.Heuristic;
+import org.apache.lucene.morphology.LetterDecoderEncoder;
+import org.apache.lucene.morphology.LuceneMorphology;
+import org.apache.lucene.morphology.Morphology;
+import org.apache.lucene.morphology.MorphologyImpl;
+
+import java.io.*;
+import java.net.JarURLConnection;
+import java.net.URL;
+import java.net.URLConnection;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+/**
+ * Загрузка морфологического словаря из двоичного снимка.
+ * Разбор текстового morph.info из jar занимает основную часть старта приложения,
+ * поэтому после первого разбора готовые массивы анализатора сохраняются в файл,
+ * а при следующих запусках читаются из отображённого в память снимка.
+ * Строки и эвристики хранятся в снимке один раз (таблицы), массивы чисел - сплошными блоками
+ */
+@Slf4j
+public final class MorphologySnapshot {
+    private static final int MAGIC = 0x4D4F5233; // "MOR3": в заголовке длина и CRC32 словаря
+
+    private MorphologySnapshot() {
+    }
+
+    /** Результат загрузки: анализатор и источник (snapshot или jar) */
+    public record Loaded(Morphology morphology, String source) {
+    }
+
+    /**
+     * Загрузить анализатор из снимка, если он есть и соответствует словарю в jar;
+     * иначе разобрать словарь из jar и записать снимок. При snapshot = null снимок не используется
+     */
+    public static Loaded load(String resource, LetterDecoderEncoder decoder, Path snapshot) throws IOException {
+        URL url = MorphologySnapshot.class.getResource(resource);
+        if (url == null) {
+            throw new FileNotFoundException("Словарь морфологии не найден: " + resource);
+        }
+        long resourceSize = url.openConnection().getContentLengthLong();
+        long resourceCrc = checksum(url);
+
+        if (snapshot != null && Files.exists(snapshot)) {
+            try {
+                Morphology morphology = read(snapshot, decoder, resourceSize, resourceCrc);
+                if (morphology != null) {
+                    return new Loaded(morphology, "snapshot");
+                }
+            } catch (IOException | RuntimeException e) {
+                log.warn("Снимок словаря {} повреждён, словарь будет разобран заново: {}", snapshot, e.getMessage());
+            }
+        }
+
+        DictionaryMorphology morphology;
+        try (InputStream in = url.openStream()) {
+            morphology = new DictionaryMorphology(in, decoder);
+        }
+        if (snapshot != null) {
+            try {
+                morphology.write(snapshot, resourceSize, resourceCrc);
+            } catch (IOException e) {
+                log.warn("Не удалось сохранить снимок словаря {}: {}", snapshot, e.getMessage());
+            }
+        }
+        return new Loaded(morphology, "jar");
+    }
+
+    // CRC32 словаря: из каталога jar без чтения данных, иначе - по содержимому
+    private static long checksum(URL url) throws IOException {
+        URLConnection connection = url.openConnection();
+        if (connection instanceof JarURLConnection jar) {
+            jar.setUseCaches(false);
+            long crc = jar.getJarEntry().getCrc();
+            if (crc >= 0) {
+                return crc;
+            }
+        }
+        CRC32 crc = new CRC32();
+        try (InputStream in = url.openStream()) {
+            byte[] chunk = new byte[1 << 16];
+            for (int read = in.read(chunk); read >= 0; read = in.read(chunk)) {
+                crc.update(chunk, 0, read);
+            }
+        }
+        return crc.getValue();
+    }
+
+    private static Morphology read(Path snapshot, LetterDecoderEncoder decoder,
+                                   long resourceSize, long resourceCrc) throws IOException {
+        MappedByteBuffer buffer;
+        try (FileChannel channel = FileChannel.open(snapshot, StandardOpenOption.READ)) {
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        // Одной длины мало: обновлённый словарь той же длины дал бы устаревшие правила
+        if (buffer.getInt() != MAGIC || buffer.getLong() != resourceSize || buffer.getLong() != resourceCrc) {
+            return null; // Снимок от другой версии словаря
+        }
+
+        String[] strings = new String[buffer.getInt()];
+        byte[] bytes = new byte[256];
+        for (int i = 0; i < strings.length; i++) {
+            int length = buffer.getInt();
+            if (length > bytes.length) {
+                bytes = new byte[length];
+            }
+            buffer.get(bytes, 0, length);
+            strings[i] = new String(bytes, 0, length, StandardCharsets.UTF_8);
+        }
+
+        Heuristic[] heuristics = new Heuristic[buffer.getInt()];
+        for (int i = 0; i < heuristics.length; i++) {
+            heuristics[i] = new Heuristic(buffer.get(), strings[buffer.getInt()], buffer.getShort(), buffer.getShort());
+        }
+
+        // Длины массивов и сами значения лежат сплошными блоками и читаются одним представлением
+        int[][] separators = new int[buffer.getInt()][];
+        IntBuffer ints = buffer.asIntBuffer();
+        int[] lengths = new int[separators.length];
+        ints.get(lengths);
+        for (int i = 0; i < separators.length; i++) {
+            separators[i] = new int[lengths[i]];
+            ints.get(separators[i]);
+        }
+        buffer.position(buffer.position() + ints.position() * Integer.BYTES);
+
+        short[] rulesId = new short[buffer.getInt()];
+        buffer.asShortBuffer().get(rulesId);
+        buffer.position(buffer.position() + rulesId.length * Short.BYTES);
+
+        Heuristic[][] rules = new Heuristic[buffer.getInt()][];
+        for (int i = 0; i < rules.length; i++) {
+            rules[i] = new Heuristic[buffer.getInt()];
+            for (int j = 0; j < rules[i].length; j++) {
+                rules[i][j] = heuristics[buffer.getInt()];
+            }
+        }
+
+        String[] grammarInfo = new String[buffer.getInt()];
+        for (int i = 0; i < grammarInfo.length; i++) {
+            grammarInfo[i] = strings[buffer.getInt()];
+        }
+        return new SnapshotMorphology(separators, rulesId, rules, grammarInfo, decoder);
+    }
+
+    // Анализатор, загруженный из снимка
+    private static class SnapshotMorphology extends MorphologyImpl {
+        private SnapshotMorphology(int[][] separators, short[] rulesId, Heuristic[][] rules,
+                                   String[] grammarInfo, LetterDecoderEncoder decoder) {
+            super(separators, rulesId, rules, grammarInfo);
+            this.decoderEncoder = decoder;
+        }
+    }
+
+    // Анализатор, разобранный из словаря в jar; умеет записать свои массивы в снимок
+    private static class DictionaryMorphology extends LuceneMorphology {
+        private DictionaryMorphology(InputStream in, LetterDecoderEncoder decoder) throws IOException {
+            super(in, decoder);
+        }
+
+        private void write(Path snapshot, long resourceSize, long resourceCrc) throws IOException {
+            Map<String, Integer> stringIds = new HashMap<>();
+            List<String> strings = new ArrayList<>();
+            Map<Heuristic, Integer> heuristicIds = new HashMap<>();
+            List<Heuristic> heuristicTable = new ArrayList<>();
+            for (Heuristic[] heuristics : rules) {
+                for (Heuristic heuristic : heuristics) {
+                    tableId(heuristic, heuristicIds, heuristicTable);
+                    tableId(heuristic.getActualNormalSuffix(), stringIds, strings);
+                }
+            }
+            for (String info : grammarInfo) {
+                tableId(info, stringIds, strings);
+            }
+
+            Files.createDirectories(snapshot.toAbsolutePath().getParent());
+            Path temp = snapshot.resolveSibling(snapshot.getFileName() + ".tmp");
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                    Files.newOutputStream(temp), 1 << 16))) {
+                out.writeInt(MAGIC);
+                out.writeLong(resourceSize);
+                out.writeLong(resourceCrc);
+
+                out.writeInt(strings.size());
+                for (String string : strings) {
+                    byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+                    out.writeInt(bytes.length);
+                    out.write(bytes);
+                }
+
+                out.writeInt(heuristicTable.size());
+                for (Heuristic heuristic : heuristicTable) {
+                    out.writeByte(heuristic.getActualSuffixLength());
+                    out.writeInt(stringIds.get(heuristic.getActualNormalSuffix()));
+                    out.writeShort(heuristic.getFormMorphInfo());
+                    out.writeShort(heuristic.getNormalFormMorphInfo());
+                }
+
+                out.writeInt(separators.length);
+                for (int[] separator : separators) {
+                    out.writeInt(separator.length);
+                }
+                for (int[] separator : separators) {
+                    for (int value : separator) {
+                        out.writeInt(value);
+                    }
+                }
+
+                out.writeInt(rulesId.length);
+                for (short id : rulesId) {
+                    out.writeShort(id);
+                }
+
+                out.writeInt(rules.length);
+                for (Heuristic[] heuristics : rules) {
+                    out.writeInt(heuristics.length);
+                    for (Heuristic heuristic : heuristics) {
+                        out.writeInt(heuristicIds.get(heuristic));
+                    }
+                }
+
+                out.writeInt(grammarInfo.length);
+                for (String info : grammarInfo) {
+                    out.writeInt(stringIds.get(info));
+                }
+            }
+            // Снимок появляется целиком или не появляется вовсе
+            Files.move(temp, snapshot, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        }
+
+        private static <T> void tableId(T value, Map<T, Integer> ids, List<T> table) {
+            ids.computeIfAbsent(value, k -> {
+                table.add(k);
+                return table.size() - 1;
+            });
+        }
+    }
+}
@@ -0,0 +1,121 @@
+package searchengine.utils;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Хеш-таблица объект -> int с открытой адресацией и линейным пробированием.
+ * Используется для частот лемм страницы: счётчики хранятся в массиве int
+ * без упаковки. Ключи null не допускаются. Не потокобезопасна
+ */
+public class ObjectIntHashMap<K> {
+    private static final float LOAD_FACTOR = 0.6f;
+
+    private Object[] keys;
+    private int[] values;
+    private int mask;
+    private int size;
+    private int resizeAt;
+
+    public ObjectIntHashMap() {
+        this(16);
+    }
+
+    public ObjectIntHashMap(int expectedSize) {
+        allocate(IntIntHashMap.capacityFor(expectedSize));
+    }
+
+    /** Прибавить delta к значению ключа (отсутствующий ключ считается нулём), вернуть новое значение */
+    public int addTo(K key, int delta) {
+        int slot = slot(key);
+        Object existing;
+        while ((existing = keys[slot]) != null) {
+            if (existing.equals(key)) {
+                return values[slot] += delta;
+            }
+            slot = (slot + 1) & mask;
+        }
+        keys[slot] = key;
+        values[slot] = delta;
+        if (++size > resizeAt) {
+            rehash(keys.length << 1);
+        }
+        return delta;
+    }
+
+    /** Значение ключа или 0, если ключа нет */
+    public int get(Object key) {
+        int slot = slot(key);
+        Object existing;
+        while ((existing = keys[slot]) != null) {
+            if (existing.equals(key)) {
+                return values[slot];
+            }
+            slot = (slot + 1) & mask;
+        }
+        return 0;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /** Ключи таблицы (новый список) */
+    @SuppressWarnings("unchecked")
+    public List<K> keys() {
+        List<K> result = new ArrayList<>(size);
+        for (Object key : keys) {
+            if (key != null) {
+                result.add((K) key);
+            }
+        }
+        return result;
+    }
+
+    @SuppressWarnings("unchecked")
+    public void forEach(ObjectIntConsumer<K> consumer) {
+        for (int i = 0; i < keys.length; i++) {
+            if (keys[i] != null) {
+                consumer.accept((K) keys[i], values[i]);
+            }
+        }
+    }
+
+    @FunctionalInterface
+    public interface ObjectIntConsumer<K> {
+        void accept(K key, int value);
+    }
+
+    private int slot(Object key) {
+        int h = key.hashCode() * 0x9E3779B9;
+        return (h ^ (h >>> 16)) & mask;
+    }
+
+    private void rehash(int capacity) {
+        Object[] oldKeys = keys;
+        int[] oldValues = values;
+        allocate(capacity);
+        for (int i = 0; i < oldKeys.length; i++) {
+            Object key = oldKeys[i];
+            if (key != null) {
+                int slot = slot(key);
+                while (keys[slot] != null) {
+                    slot = (slot + 1) & mask;
+                }
+                keys[slot] = key;
+                values[slot] = oldValues[i];
+            }
+        }
+    }
+
+    private void allocate(int capacity) {
+        keys = new Object[capacity];
+        values = new int[capacity];
+        mask = capacity - 1;
+        resizeAt = (int) (capacity * LOAD_FACTOR);
+    }
+}
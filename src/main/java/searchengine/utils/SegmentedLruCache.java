@@ -0,0 +1,162 @@
+package searchengine.utils;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+/**
+ * Потокобезопасный кэш ограниченного размера с вытеснением SLRU (segmented LRU).
+ * Новые записи попадают в испытательный сегмент, повторное обращение переводит
+ * запись в защищённый. Поэтому редкие слова из длинного хвоста не вытесняют частые.
+ * Ключи распределены по независимым полосам с собственной блокировкой
+ */
+public class SegmentedLruCache<K, V> {
+    private static final int STRIPES = 16;
+    private static final double PROTECTED_RATIO = 0.8;
+
+    private final Stripe<K, V>[] stripes;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    public SegmentedLruCache(int maximumSize) {
+        int stripeSize = Math.max(2, maximumSize / STRIPES);
+        stripes = newStripes(STRIPES);
+        for (int i = 0; i < STRIPES; i++) {
+            stripes[i] = new Stripe<>(stripeSize);
+        }
+    }
+
+    // Массив обобщённого типа создаётся только через приведение
+    @SuppressWarnings("unchecked")
+    private static <K, V> Stripe<K, V>[] newStripes(int count) {
+        return (Stripe<K, V>[]) new Stripe<?, ?>[count];
+    }
+
+    /** Значение из кэша; при промахе вычисляется loader (вне блокировки) и запоминается */
+    public V get(K key, Function<K, V> loader) {
+        Stripe<K, V> stripe = stripeFor(key);
+        V value = stripe.get(key);
+        if (value != null) {
+            hits.increment();
+            return value;
+        }
+        misses.increment();
+        value = loader.apply(key);
+        if (value != null) {
+            evictions.add(stripe.put(key, value));
+        }
+        return value;
+    }
+
+    /** Значение из кэша или null; промах учитывается в статистике */
+    public V getIfPresent(K key) {
+        V value = stripeFor(key).get(key);
+        if (value != null) {
+            hits.increment();
+        } else {
+            misses.increment();
+        }
+        return value;
+    }
+
+    public void put(K key, V value) {
+        evictions.add(stripeFor(key).put(key, value));
+    }
+
+    public long size() {
+        long size = 0;
+        for (Stripe<K, V> stripe : stripes) {
+            size += stripe.size();
+        }
+        return size;
+    }
+
+    public long hitCount() {
+        return hits.sum();
+    }
+
+    public long missCount() {
+        return misses.sum();
+    }
+
+    public long evictionCount() {
+        return evictions.sum();
+    }
+
+    public double hitRate() {
+        long hitCount = hits.sum();
+        long total = hitCount + misses.sum();
+        return total == 0 ? 0 : (double) hitCount / total;
+    }
+
+    private Stripe<K, V> stripeFor(K key) {
+        int h = key.hashCode();
+        h ^= h >>> 16;
+        return stripes[h & (STRIPES - 1)];
+    }
+
+    private static class Stripe<K, V> {
+        private final int protectedCapacity;
+        private final int probationCapacity;
+        private final LinkedHashMap<K, V> probation = new LinkedHashMap<>(16, 0.75f, true);
+        private final LinkedHashMap<K, V> protectedSegment = new LinkedHashMap<>(16, 0.75f, true);
+
+        private Stripe(int capacity) {
+            this.protectedCapacity = Math.max(1, (int) (capacity * PROTECTED_RATIO));
+            this.probationCapacity = Math.max(1, capacity - protectedCapacity);
+        }
+
+        private synchronized V get(K key) {
+            V value = protectedSegment.get(key);
+            if (value != null) {
+                return value;
+            }
+            value = probation.remove(key);
+            if (value != null) {
+                // Повторное обращение: запись переходит в защищённый сегмент
+                protectedSegment.put(key, value);
+                if (protectedSegment.size() > protectedCapacity) {
+                    // Самая старая защищённая запись получает второй шанс в испытательном
+                    Map.Entry<K, V> eldest = removeEldest(protectedSegment);
+                    probation.put(eldest.getKey(), eldest.getValue());
+                    trimProbation();
+                }
+            }
+            return value;
+        }
+
+        /** Добавить запись, вернуть количество вытесненных */
+        private synchronized int put(K key, V value) {
+            if (protectedSegment.containsKey(key)) {
+                protectedSegment.put(key, value);
+                return 0;
+            }
+            probation.put(key, value);
+            return trimProbation();
+        }
+
+        private int trimProbation() {
+            int evicted = 0;
+            while (probation.size() > probationCapacity) {
+                removeEldest(probation);
+                evicted++;
+            }
+            return evicted;
+        }
+
+        private synchronized int size() {
+            return probation.size() + protectedSegment.size();
+        }
+
+        private static <K, V> Map.Entry<K, V> removeEldest(LinkedHashMap<K, V> map) {
+            Iterator<Map.Entry<K, V>> iterator = map.entrySet().iterator();
+            Map.Entry<K, V> eldest = iterator.next();
+            Map.Entry<K, V> copy = Map.entry(eldest.getKey(), eldest.getValue());
+            iterator.remove();
+            return copy;
+        }
+    }
+}
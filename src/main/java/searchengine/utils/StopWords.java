@@ -0,0 +1,92 @@
+package searchengine.utils;
+
+/**
+ * Стоп-слова русского и английского языков.
+ * Хранятся в таблице с совершенным хешированием: затравка хеш-функции подбирается
+ * при загрузке класса так, чтобы у слов не было коллизий. Проверка слова - одно
+ * вычисление хеша и одно сравнение, без создания строк
+ */
+public final class StopWords {
+    private static final String[] WORDS = {
+            // Русские стоп-слова (50+)
+            "и", "в", "во", "не", "что", "он", "на", "я", "с", "со", "как", "а", "то",
+            "все", "она", "так", "его", "но", "да", "ты", "к", "у", "же", "вы", "за",
+            "бы", "по", "только", "ее", "мне", "было", "вот", "от", "меня", "еще", "нет",
+            "о", "из", "ему", "теперь", "когда", "даже", "ну", "ли", "если", "уже",
+            "или", "ни", "быть", "был", "него", "до", "вас", "нибудь", "опять", "уж",
+
+            // Английские стоп-слова (40+)
+            "a", "an", "the", "and", "or", "but", "in", "on", "at", "to", "for", "of",
+            "with", "by", "from", "up", "about", "into", "through", "during", "before",
+            "after", "above", "below", "between", "among", "is", "are", "was", "were",
+            "be", "been", "being", "have", "has", "had", "do", "does", "did", "will",
+            "would", "shall", "should", "may", "might", "must", "can", "could"
+    };
+
+    private static final char[][] TABLE;
+    private static final int MASK;
+    private static final int SEED;
+
+    static {
+        int[] sizeAndSeed = findPerfectHash();
+        MASK = sizeAndSeed[0] - 1;
+        SEED = sizeAndSeed[1];
+        TABLE = tryBuild(sizeAndSeed[0], SEED);
+    }
+
+    private StopWords() {
+    }
+
+    /** Проверить слово из буфера (символы в нижнем регистре) */
+    public static boolean contains(char[] buffer, int length) {
+        char[] word = TABLE[hash(buffer, length, SEED) & MASK];
+        if (word == null || word.length != length) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            if (word[i] != buffer[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public static boolean contains(String word) {
+        return contains(word.toCharArray(), word.length());
+    }
+
+    // Наименьший размер таблицы (степень двойки) и затравка без коллизий
+    private static int[] findPerfectHash() {
+        int size = Integer.highestOneBit(WORDS.length * 2) << 1;
+        while (true) {
+            for (int seed = 1; seed < 10_000; seed++) {
+                if (tryBuild(size, seed) != null) {
+                    return new int[]{size, seed};
+                }
+            }
+            size <<= 1;
+        }
+    }
+
+    private static char[][] tryBuild(int size, int seed) {
+        char[][] table = new char[size][];
+        for (String word : WORDS) {
+            char[] chars = word.toCharArray();
+            int slot = hash(chars, chars.length, seed) & (size - 1);
+            if (table[slot] != null) {
+                return null;
+            }
+            table[slot] = chars;
+        }
+        return table;
+    }
+
+    private static int hash(char[] buffer, int length, int seed) {
+        int h = seed;
+        for (int i = 0; i < length; i++) {
+            h = h * 31 + buffer[i];
+        }
+        h *= 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+}
@@ -0,0 +1,112 @@
+package searchengine.utils;
+
+import java.util.Arrays;
+
+/**
+ * Однопроходный токенизатор текста для лемматизации.
+ * Пропускает HTML-теги и сущности, делит текст на слова из русских или английских букв,
+ * приводит их к нижнему регистру прямо в буфере и отбрасывает короткие слова,
+ * слова со смешанным алфавитом и стоп-слова. Подстроки не создаются:
+ * слово передаётся потребителю как буфер и длина
+ */
+public final class TextTokenizer {
+    private static final int MAX_ENTITY_LENGTH = 10;
+
+    private TextTokenizer() {
+    }
+
+    /** Получатель слов. Буфер переиспользуется, копировать его нужно самому потребителю */
+    @FunctionalInterface
+    public interface TokenConsumer {
+        void accept(char[] buffer, int length, boolean cyrillic, int start, int end);
+    }
+
+    public static void tokenize(CharSequence text, TokenConsumer consumer) {
+        int textLength = text.length();
+        char[] buffer = new char[32];
+        int length = 0;
+        int start = 0;
+        boolean hasCyrillic = false;
+        boolean hasLatin = false;
+        int nextTagEnd = -1; // позиция ближайшего '>' (ищется лениво, чтобы проход оставался линейным)
+        boolean noMoreTags = false;
+
+        for (int i = 0; i <= textLength; i++) {
+            char c = i < textLength ? text.charAt(i) : ' ';
+            char lower = toLowerLetter(c);
+
+            if (lower != 0) {
+                if (length == buffer.length) {
+                    buffer = Arrays.copyOf(buffer, buffer.length * 2);
+                }
+                if (length == 0) {
+                    start = i;
+                }
+                buffer[length++] = lower;
+                if (lower >= 'a' && lower <= 'z') {
+                    hasLatin = true;
+                } else {
+                    hasCyrillic = true;
+                }
+                continue;
+            }
+
+            // Конец слова
+            if (length > 0) {
+                if (length >= 2 && hasCyrillic != hasLatin && !StopWords.contains(buffer, length)) {
+                    consumer.accept(buffer, length, hasCyrillic, start, i);
+                }
+                length = 0;
+                hasCyrillic = false;
+                hasLatin = false;
+            }
+
+            // HTML-тег <...> пропускается целиком
+            if (c == '<' && !noMoreTags) {
+                if (nextTagEnd < i) {
+                    nextTagEnd = indexOf(text, '>', i + 1);
+                    noMoreTags = nextTagEnd == -1; // закрывающих скобок дальше нет
+                }
+                if (nextTagEnd > i + 1) {
+                    i = nextTagEnd;
+                }
+            } else if (c == '&') {
+                i = skipEntity(text, i);
+            }
+        }
+    }
+
+    /** Буква в нижнем регистре или 0, если символ не русская и не английская буква */
+    private static char toLowerLetter(char c) {
+        if (c >= 'a' && c <= 'z') return c;
+        if (c >= 'A' && c <= 'Z') return (char) (c + ('a' - 'A'));
+        if (c >= 'а' && c <= 'я') return c;
+        if (c >= 'А' && c <= 'Я') return (char) (c + ('а' - 'А'));
+        if (c == 'ё' || c == 'Ё') return 'ё';
+        return 0;
+    }
+
+    // Сущность вида &amp; или &#160; - короткая последовательность букв/цифр до ';'
+    private static int skipEntity(CharSequence text, int ampersand) {
+        int limit = Math.min(text.length(), ampersand + MAX_ENTITY_LENGTH + 2);
+        for (int i = ampersand + 1; i < limit; i++) {
+            char c = text.charAt(i);
+            if (c == ';') {
+                return i > ampersand + 1 ? i : ampersand;
+            }
+            if (!Character.isLetterOrDigit(c) && c != '#') {
+                return ampersand;
+            }
+        }
+        return ampersand;
+    }
+
+    private static int indexOf(CharSequence text, char target, int from) {
+        for (int i = from; i < text.length(); i++) {
+            if (text.charAt(i) == target) {
+                return i;
+            }
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,48 @@
+package searchengine.utils;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Счётчики int -> int без конкуренции между потоками.
+ * Каждый поток копит увеличения в собственной примитивной таблице, поэтому потоки
+ * не ждут друг друга. Общий результат собирается методом merge в контрольной точке,
+ * например после завершения обхода сайта
+ */
+public class ThreadLocalIntCounter {
+    private final Queue<Cell> cells = new ConcurrentLinkedQueue<>();
+    private final ThreadLocal<Cell> localCell = ThreadLocal.withInitial(() -> {
+        Cell cell = new Cell();
+        cells.add(cell);
+        return cell;
+    });
+
+    /** Увеличить на единицу счётчики всех ключей (в таблице текущего потока) */
+    public void incrementAll(int[] keys) {
+        Cell cell = localCell.get();
+        // Блокировку ячейки берёт только её поток и merge, поэтому она практически всегда свободна
+        synchronized (cell) {
+            for (int key : keys) {
+                cell.counts.addTo(key, 1);
+            }
+        }
+    }
+
+    /** Сумма таблиц всех потоков */
+    public IntIntHashMap merge() {
+        IntIntHashMap result = null;
+        for (Cell cell : cells) {
+            synchronized (cell) {
+                if (result == null) {
+                    result = new IntIntHashMap(cell.counts.size());
+                }
+                result.addAll(cell.counts);
+            }
+        }
+        return result != null ? result : new IntIntHashMap();
+    }
+
+    private static class Cell {
+        private final IntIntHashMap counts = new IntIntHashMap(1024);
+    }
+}
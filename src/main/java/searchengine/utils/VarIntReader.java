@@ -0,0 +1,42 @@
+package searchengine.utils;
+
+/** Последовательное чтение чисел varint из массива байтов (формат {@link VarIntWriter}) */
+public class VarIntReader {
+    private final byte[] buffer;
+    private final int limit;
+    private int position;
+
+    public VarIntReader(byte[] buffer) {
+        this(buffer, 0, buffer.length);
+    }
+
+    public VarIntReader(byte[] buffer, int offset, int length) {
+        this.buffer = buffer;
+        this.position = offset;
+        this.limit = offset + length;
+    }
+
+    public int readVarInt() {
+        int value = 0;
+        int shift = 0;
+        byte b;
+        do {
+            b = buffer[position++];
+            value |= (b & 0x7F) << shift;
+            shift += 7;
+        } while (b < 0);
+        return value;
+    }
+
+    public boolean hasRemaining() {
+        return position < limit;
+    }
+
+    public int position() {
+        return position;
+    }
+
+    public void skip(int count) {
+        position += count;
+    }
+}
@@ -0,0 +1,59 @@
+package searchengine.utils;
+
+import java.util.Arrays;
+
+/**
+ * Растущий буфер байтов с записью целых в формате varint (7 бит на байт,
+ * старший бит - признак продолжения). Небольшие числа, например разности
+ * соседних позиций, занимают один байт
+ */
+public class VarIntWriter {
+    private byte[] buffer;
+    private int length;
+
+    public VarIntWriter() {
+        this(64);
+    }
+
+    public VarIntWriter(int initialCapacity) {
+        buffer = new byte[Math.max(16, initialCapacity)];
+    }
+
+    /** Записать неотрицательное число */
+    public void writeVarInt(int value) {
+        ensureCapacity(5);
+        while ((value & ~0x7F) != 0) {
+            buffer[length++] = (byte) ((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        buffer[length++] = (byte) value;
+    }
+
+    public void writeBytes(byte[] bytes, int offset, int count) {
+        ensureCapacity(count);
+        System.arraycopy(bytes, offset, buffer, length, count);
+        length += count;
+    }
+
+    public void writeBytes(VarIntWriter other) {
+        writeBytes(other.buffer, 0, other.length);
+    }
+
+    public int length() {
+        return length;
+    }
+
+    public void reset() {
+        length = 0;
+    }
+
+    public byte[] toByteArray() {
+        return Arrays.copyOf(buffer, length);
+    }
+
+    private void ensureCapacity(int extra) {
+        if (length + extra > buffer.length) {
+            buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, length + extra));
+        }
+    }
+}
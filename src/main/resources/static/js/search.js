@@ -2,6 +2,8 @@
 
 let searchSitesList = [];
 let currentSearchMessage = null;
+let suggestTimer = null;
+let suggestRequest = 0; // Номер последнего запроса подсказок: ответы на устаревшие отбрасываются
 
 function initSearch() {
     //console.log('Initializing Search tab...');
@@ -59,6 +61,44 @@ function setupSearchEventListeners() {
         });
 
         queryInput.addEventListener('input', validateSearchForm);
+        queryInput.addEventListener('input', scheduleSuggestions);
+}
+
+// Подсказки запрашиваются после паузы в наборе, чтобы не отправлять запрос на каждую букву
+function scheduleSuggestions() {
+    clearTimeout(suggestTimer);
+    suggestTimer = setTimeout(loadSuggestions, 150);
+}
+
+function loadSuggestions() {
+    const query = document.getElementById('search-query-input').value;
+        const list = document.getElementById('search-suggestions');
+        const requestNumber = ++suggestRequest;
+
+        if (!query.trim() || query.endsWith(' ')) {
+            list.innerHTML = '';
+            return;
+        }
+
+        let url = `/api/suggest?query=${encodeURIComponent(query)}&limit=8`;
+        const selectedSite = document.getElementById('search-site-select').value;
+        if (selectedSite) {
+            url += `&site=${encodeURIComponent(selectedSite)}`;
+        }
+        fetch(url)
+            .then(response => response.json())
+            .then(data => {
+                if (requestNumber !== suggestRequest || !data.result) {
+                    return;
+                }
+                list.innerHTML = '';
+                data.suggestions.forEach(suggestion => {
+                    const option = document.createElement('option');
+                    option.value = suggestion;
+                    list.appendChild(option);
+                });
+            })
+            .catch(error => console.error('Suggest error:', error));
 }
 
 function performSearch() {
@@ -113,7 +153,9 @@ function displaySearchResults(data) {
             container.appendChild(resultElement);
         });
 
-        showSearchMessage(`Found ${data.count} results`, 'success');
+        // При отсечении блоков (search.pruning) count - нижняя оценка
+        const count = data.countExact === false ? `${data.count}+` : data.count;
+        showSearchMessage(`Found ${count} results`, 'success');
 }
 
 function createResultElement(result) {
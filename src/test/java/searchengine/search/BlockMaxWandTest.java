@@ -0,0 +1,114 @@
+package searchengine.search;
+
+import org.junit.jupiter.api.Test;
+import searchengine.search.PostingIntersection.Matches;
+
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class BlockMaxWandTest {
+
+    // Ранги - целые числа: сумма не зависит от порядка сложения и сравнивается точно
+    private static PostingList randomList(Random random, int size, int range, boolean skewed) {
+        TreeMap<Integer, Float> postings = new TreeMap<>();
+        while (postings.size() < size) {
+            float rank = skewed
+                    ? (float) Math.floor(1 / Math.pow(1 - random.nextDouble(), 0.9))
+                    : random.nextInt(5) + 1;
+            postings.put(random.nextInt(range) + 1, rank);
+        }
+        int[] pageIds = new int[size];
+        float[] ranks = new float[size];
+        int i = 0;
+        for (Map.Entry<Integer, Float> posting : postings.entrySet()) {
+            pageIds[i] = posting.getKey();
+            ranks[i++] = posting.getValue();
+        }
+        return PostingList.of(pageIds, ranks, size);
+    }
+
+    // Полный перебор: релевантность страницы - сумма рангов во всех списках
+    private static TopKCollector exhaustive(List<PostingList> lists, int k, boolean conjunctive) {
+        Map<Integer, float[]> pages = new TreeMap<>();
+        for (PostingList list : lists) {
+            PostingList.Iterator cursor = list.iterator();
+            for (int page = cursor.nextDoc(); page != PostingCursor.NO_MORE_DOCS; page = cursor.nextDoc()) {
+                float[] state = pages.computeIfAbsent(page, p -> new float[2]);
+                state[0] += cursor.rank();
+                state[1]++;
+            }
+        }
+        TopKCollector topK = new TopKCollector(k);
+        pages.forEach((page, state) -> {
+            if (!conjunctive || state[1] == lists.size()) {
+                topK.collect(page, state[0]);
+            }
+        });
+        return topK;
+    }
+
+    private static void assertSameTop(Matches expectedTop, TopKCollector actual) {
+        Matches actualTop = actual.drainSorted();
+        assertArrayEquals(expectedTop.pageIds(), actualTop.pageIds());
+        assertArrayEquals(expectedTop.scores(), actualTop.scores());
+    }
+
+    @Test
+    void matchesExhaustiveScoringWithAndWithoutPruning() {
+        Random random = new Random(1);
+        for (int round = 0; round < 1000; round++) {
+            int range = 100 + random.nextInt(20000);
+            List<PostingList> lists = new ArrayList<>();
+            int terms = 1 + random.nextInt(4);
+            for (int i = 0; i < terms; i++) {
+                lists.add(randomList(random, 1 + random.nextInt(Math.min(range, 3000)), range, random.nextBoolean()));
+            }
+            int k = 1 + random.nextInt(30);
+
+            for (boolean conjunctive : new boolean[]{true, false}) {
+                TopKCollector expected = exhaustive(lists, k, conjunctive);
+                TopKCollector full = new TopKCollector(k);
+                TopKCollector pruned = new TopKCollector(k);
+                boolean exact = conjunctive
+                        ? BlockMaxWand.conjunctive(lists, full, false)
+                        : BlockMaxWand.disjunctive(lists, full, false);
+                boolean prunedExact = conjunctive
+                        ? BlockMaxWand.conjunctive(lists, pruned, true)
+                        : BlockMaxWand.disjunctive(lists, pruned, true);
+
+                assertTrue(exact);
+                assertEquals(expected.totalHits(), full.totalHits());
+                // Пропущенный блок мог и не содержать совпадений, поэтому без exact - только нижняя оценка
+                if (prunedExact) {
+                    assertEquals(expected.totalHits(), pruned.totalHits());
+                } else {
+                    assertTrue(pruned.totalHits() <= expected.totalHits());
+                }
+                Matches expectedTop = expected.drainSorted();
+                assertSameTop(expectedTop, full);
+                assertSameTop(expectedTop, pruned);
+            }
+        }
+    }
+
+    @Test
+    void exhaustedListKeepsCountExact() {
+        // Второй список кончается раньше ведущего: оставшиеся страницы не пропущены, совпадений просто нет
+        int[] longIds = new int[200];
+        float[] longRanks = new float[200];
+        for (int i = 0; i < longIds.length; i++) {
+            longIds[i] = i + 1;
+            longRanks[i] = 1;
+        }
+        List<PostingList> lists = List.of(
+                PostingList.of(new int[]{1, 500}, new float[]{1, 1}, 2),
+                PostingList.of(longIds, longRanks, longIds.length));
+
+        TopKCollector topK = new TopKCollector(1);
+        assertTrue(BlockMaxWand.conjunctive(lists, topK, true));
+        assertEquals(1, topK.totalHits());
+    }
+}
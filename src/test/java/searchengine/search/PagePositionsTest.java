@@ -0,0 +1,62 @@
+package searchengine.search;
+
+import org.junit.jupiter.api.Test;
+import searchengine.search.PagePositions.TermPositions;
+
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class PagePositionsTest {
+
+    @Test
+    void decodesRequestedTermsOnly() {
+        Random random = new Random(9);
+        Map<String, Integer> termIds = new HashMap<>();
+        Map<Integer, List<int[]>> expected = new HashMap<>();
+        PagePositions.Builder builder = new PagePositions.Builder();
+
+        // Слова текста по порядку: позиция, начало и конец слова растут
+        int start = 0;
+        for (int position = 0; position < 5000; position++) {
+            String lemma = "l" + random.nextInt(300);
+            int end = start + 1 + random.nextInt(20);
+            builder.add(lemma, position, start, end);
+            int termId = termIds.computeIfAbsent(lemma, k -> 1 + termIds.size() * 3001); // Разности id в несколько байт
+            expected.computeIfAbsent(termId, k -> new ArrayList<>()).add(new int[]{position, start, end});
+            start = end + 1 + random.nextInt(3);
+        }
+        // Лемма без id словаря не кодируется
+        builder.add("unknown", 5000, start, start + 3);
+        byte[] data = builder.encode(termIds);
+
+        Set<Integer> requested = new HashSet<>();
+        for (Integer termId : expected.keySet()) {
+            if (random.nextInt(3) == 0) {
+                requested.add(termId);
+            }
+        }
+        requested.add(Integer.MAX_VALUE); // Термина нет на странице
+
+        Map<Integer, TermPositions> decoded = PagePositions.decode(data, requested);
+        assertEquals(requested.size() - 1, decoded.size());
+        for (Map.Entry<Integer, TermPositions> entry : decoded.entrySet()) {
+            List<int[]> occurrences = expected.get(entry.getKey());
+            TermPositions term = entry.getValue();
+            assertEquals(occurrences.size(), term.size());
+            for (int i = 0; i < occurrences.size(); i++) {
+                assertArrayEquals(occurrences.get(i),
+                        new int[]{term.positions()[i], term.starts()[i], term.ends()[i]});
+            }
+        }
+    }
+
+    @Test
+    void emptyDataDecodesToNothing() {
+        assertTrue(PagePositions.decode(null, Set.of(1)).isEmpty());
+        assertTrue(PagePositions.decode(new byte[0], Set.of(1)).isEmpty());
+        assertTrue(new PagePositions.Builder().isEmpty());
+    }
+}
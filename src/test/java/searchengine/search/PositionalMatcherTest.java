@@ -0,0 +1,63 @@
+package searchengine.search;
+
+import org.junit.jupiter.api.Test;
+import searchengine.search.PagePositions.TermPositions;
+import searchengine.search.PositionalMatcher.Phrase;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class PositionalMatcherTest {
+
+    private static TermPositions at(int... positions) {
+        return new TermPositions(positions, new int[positions.length], new int[positions.length]);
+    }
+
+    @Test
+    void exactPhraseRequiresConsecutiveWordsInOrder() {
+        Map<Integer, TermPositions> positions = new HashMap<>();
+        positions.put(1, at(3, 10));
+        positions.put(2, at(5, 11));
+        Phrase phrase = new Phrase(new int[]{1, 2}, new int[]{0, 1}, 0);
+
+        assertTrue(PositionalMatcher.matches(positions, phrase));
+
+        positions.put(2, at(5, 9));
+        assertFalse(PositionalMatcher.matches(positions, phrase));
+    }
+
+    @Test
+    void proximityRejectsWordsOnOppositeSidesOfAnchor() {
+        // Редкое слово 1 в позиции 10, слова 2 и 3 на расстоянии span по разные стороны:
+        // каждое по отдельности близко к якорю, но вместе они занимают окно 2 * span
+        Map<Integer, TermPositions> positions = new HashMap<>();
+        positions.put(1, at(10));
+        positions.put(2, at(6, 30, 40));
+        positions.put(3, at(14, 50, 60));
+        Phrase phrase = new Phrase(new int[]{1, 2, 3}, new int[]{0, 1, 2}, 2);
+
+        assertFalse(PositionalMatcher.matches(positions, phrase));
+
+        positions.put(3, at(12, 50, 60));
+        assertFalse(PositionalMatcher.matches(positions, phrase));
+
+        positions.put(2, at(8, 30, 40));
+        assertTrue(PositionalMatcher.matches(positions, phrase));
+    }
+
+    @Test
+    void proximityCountsRepeatedWordsSeparately() {
+        Map<Integer, TermPositions> positions = new HashMap<>();
+        positions.put(1, at(5, 40));
+        positions.put(2, at(6));
+        Phrase phrase = new Phrase(new int[]{1, 2, 1}, new int[]{0, 1, 2}, 1);
+
+        assertFalse(PositionalMatcher.matches(positions, phrase));
+
+        positions.put(1, at(5, 8));
+        assertTrue(PositionalMatcher.matches(positions, phrase));
+    }
+}
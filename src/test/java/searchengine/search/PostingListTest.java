@@ -0,0 +1,141 @@
+package searchengine.search;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class PostingListTest {
+    private static final int BLOCK = PostingList.BLOCK_SIZE;
+
+    private final Random random = new Random(5);
+
+    // Размеры на границах блоков и id с большими разностями (многобайтовые varint)
+    private static final int[] SIZES = {1, 2, BLOCK - 1, BLOCK, BLOCK + 1, 2 * BLOCK, 2 * BLOCK + 1, 1000};
+
+    private int[] randomIds(int size) {
+        TreeSet<Integer> ids = new TreeSet<>();
+        int range = random.nextBoolean() ? size * 3 : Integer.MAX_VALUE - 2;
+        while (ids.size() < size) {
+            ids.add(1 + random.nextInt(range));
+        }
+        return ids.stream().mapToInt(Integer::intValue).toArray();
+    }
+
+    private float[] randomRanks(int size) {
+        float[] ranks = new float[size];
+        for (int i = 0; i < size; i++) {
+            ranks[i] = random.nextInt(1000) / 10f;
+        }
+        return ranks;
+    }
+
+    // Индекс первого id не меньше target или size
+    private static int firstAtLeast(int[] ids, int target) {
+        int index = Arrays.binarySearch(ids, target);
+        return index >= 0 ? index : -index - 1;
+    }
+
+    @Test
+    void iteratesSameIdsAndRanks() {
+        for (int size : SIZES) {
+            int[] ids = randomIds(size);
+            float[] ranks = randomRanks(size);
+            PostingList list = PostingList.of(ids, ranks, size);
+
+            assertEquals(size, list.size());
+            assertArrayEquals(ids, list.toArray());
+            PostingList.Iterator iterator = list.iterator();
+            for (int i = 0; i < size; i++) {
+                assertEquals(ids[i], iterator.nextDoc());
+                assertEquals(ranks[i], iterator.rank());
+            }
+            assertEquals(PostingCursor.NO_MORE_DOCS, iterator.nextDoc());
+            assertEquals(PostingCursor.NO_MORE_DOCS, iterator.nextDoc());
+        }
+    }
+
+    @Test
+    void emptyListHasNoDocsAndNoBlocks() {
+        PostingList list = PostingList.of(new int[0], new float[0], 0);
+
+        assertEquals(PostingCursor.NO_MORE_DOCS, list.iterator().nextDoc());
+        assertEquals(PostingCursor.NO_MORE_DOCS, list.iterator().advance(1));
+        assertEquals(-1, list.blockOf(1));
+        assertEquals(0, list.maxRank());
+    }
+
+    @Test
+    void blockDataMatchesIds() {
+        for (int size : SIZES) {
+            int[] ids = randomIds(size);
+            float[] ranks = randomRanks(size);
+            PostingList list = PostingList.of(ids, ranks, size);
+
+            float maxRank = 0;
+            for (int block = 0; block * BLOCK < size; block++) {
+                int last = Math.min(size, (block + 1) * BLOCK) - 1;
+                float blockMax = 0;
+                for (int i = block * BLOCK; i <= last; i++) {
+                    blockMax = Math.max(blockMax, ranks[i]);
+                }
+                assertEquals(ids[last], list.blockLastDoc(block));
+                assertEquals(blockMax, list.blockMaxRank(block));
+                maxRank = Math.max(maxRank, blockMax);
+
+                // Граница блока: его последний id и следующий за ним
+                assertEquals(block, list.blockOf(ids[last]));
+                int next = list.blockOf(ids[last] + 1);
+                assertEquals(last + 1 < size ? block + 1 : -1, next);
+            }
+            assertEquals(maxRank, list.maxRank());
+            assertEquals(0, list.blockOf(0));
+            assertEquals(-1, list.blockOf(ids[size - 1] + 1));
+        }
+    }
+
+    @Test
+    void advanceFindsFirstIdAtLeastTarget() {
+        for (int round = 0; round < 200; round++) {
+            int size = SIZES[random.nextInt(SIZES.length)];
+            int[] ids = randomIds(size);
+            float[] ranks = randomRanks(size);
+            PostingList.Iterator iterator = PostingList.of(ids, ranks, size).iterator();
+
+            // Цели по возрастанию: точные id, соседние с ними и границы блоков
+            int target = 0;
+            while (true) {
+                int choice = random.nextInt(4);
+                int index = Math.min(size - 1, firstAtLeast(ids, target) + random.nextInt(2 * BLOCK));
+                if (choice == 0) {
+                    target = ids[index];
+                } else if (choice == 1) {
+                    target = Math.max(target, ids[index] + 1);
+                } else if (choice == 2) {
+                    int blockLast = Math.min(size - 1, (index / BLOCK + 1) * BLOCK - 1);
+                    target = Math.max(target, ids[blockLast]);
+                } else {
+                    target = Math.max(target, ids[index] - 1);
+                }
+
+                int expected = firstAtLeast(ids, target);
+                int doc = iterator.advance(target);
+                if (expected == size) {
+                    assertEquals(PostingCursor.NO_MORE_DOCS, doc);
+                    break;
+                }
+                assertEquals(ids[expected], doc);
+                assertEquals(ranks[expected], iterator.rank());
+                // advance к цели не больше текущего id не двигает курсор
+                assertEquals(doc, iterator.advance(target));
+                if (expected == size - 1) {
+                    assertEquals(PostingCursor.NO_MORE_DOCS, iterator.advance(doc + 1));
+                    break;
+                }
+                target = doc + 1;
+            }
+        }
+    }
+}
@@ -0,0 +1,158 @@
+package searchengine.search;
+
+import org.junit.jupiter.api.Test;
+import searchengine.search.PostingIntersection.Matches;
+import searchengine.search.QueryNode.And;
+import searchengine.search.QueryNode.Or;
+import searchengine.search.QueryNode.Term;
+
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class QueryEvaluatorTest {
+    private static final int LEMMAS = 8;
+
+    private final Random random = new Random(3);
+
+    // Ожидаемые страницы по теории множеств; null - узел не ограничивает выдачу (игнорируемое слово)
+    private static Set<Integer> expected(QueryNode node, Map<String, TreeMap<Integer, Float>> lists,
+                                         Set<String> ignored) {
+        if (node instanceof Term term) {
+            if (ignored.contains(term.lemma())) {
+                return null;
+            }
+            TreeMap<Integer, Float> postings = lists.get(term.lemma());
+            return postings == null ? new TreeSet<>() : new TreeSet<>(postings.keySet());
+        }
+        if (node instanceof Or or) {
+            Set<Integer> union = new TreeSet<>();
+            for (QueryNode child : or.children()) {
+                Set<Integer> pages = expected(child, lists, ignored);
+                if (pages == null) {
+                    return null;
+                }
+                union.addAll(pages);
+            }
+            return union;
+        }
+        And and = (And) node;
+        Set<Integer> result = null;
+        for (QueryNode child : and.children()) {
+            Set<Integer> pages = expected(child, lists, ignored);
+            if (pages == null) {
+                continue;
+            }
+            if (result == null) {
+                result = new TreeSet<>(pages);
+            } else {
+                result.retainAll(pages);
+            }
+        }
+        if (result == null) {
+            return null;
+        }
+        for (QueryNode child : and.excluded()) {
+            Set<Integer> pages = expected(child, lists, ignored);
+            if (pages != null) {
+                result.removeAll(pages);
+            }
+        }
+        return result;
+    }
+
+    private QueryNode randomNode(int depth) {
+        if (depth == 0 || random.nextInt(3) == 0) {
+            return new Term("t" + random.nextInt(LEMMAS));
+        }
+        List<QueryNode> children = new ArrayList<>();
+        int size = 1 + random.nextInt(3);
+        for (int i = 0; i < size; i++) {
+            children.add(randomNode(depth - 1));
+        }
+        if (random.nextBoolean()) {
+            return new Or(children);
+        }
+        List<QueryNode> excluded = random.nextBoolean() ? List.of(randomNode(depth - 1)) : List.of();
+        return new And(children, excluded);
+    }
+
+    @Test
+    void matchesSetAlgebra() {
+        for (int round = 0; round < 3000; round++) {
+            Map<String, TreeMap<Integer, Float>> lists = new HashMap<>();
+            for (int i = 0; i < LEMMAS; i++) {
+                if (random.nextInt(5) == 0) {
+                    continue; // Слова нет на сайте
+                }
+                TreeMap<Integer, Float> postings = new TreeMap<>();
+                int size = random.nextInt(300);
+                int range = 50 + random.nextInt(2000);
+                for (int j = 0; j < size; j++) {
+                    postings.put(random.nextInt(range), (float) (1 + random.nextInt(9)));
+                }
+                lists.put("t" + i, postings);
+            }
+            Set<String> ignored = random.nextInt(3) == 0 ? Set.of("t" + random.nextInt(LEMMAS)) : Set.of();
+            QueryNode root = randomNode(3);
+            if (!(root instanceof And)) {
+                root = new And(List.of(root), List.of());
+            }
+
+            QueryEvaluator.TermSource source = new QueryEvaluator.TermSource() {
+                @Override
+                public PostingCursor postings(String lemma) {
+                    TreeMap<Integer, Float> postings = lists.get(lemma);
+                    if (postings == null || postings.isEmpty()) {
+                        return null;
+                    }
+                    int[] pageIds = postings.keySet().stream().mapToInt(Integer::intValue).toArray();
+                    float[] ranks = new float[pageIds.length];
+                    int i = 0;
+                    for (float rank : postings.values()) {
+                        ranks[i++] = rank;
+                    }
+                    // Вперемешку сжатые списки и массивы: оба курсора должны вести себя одинаково
+                    return random.nextBoolean()
+                            ? PostingList.of(pageIds, ranks, pageIds.length).iterator()
+                            : new SortedArrayCursor(pageIds, ranks, pageIds.length);
+                }
+
+                @Override
+                public boolean ignored(String lemma) {
+                    return ignored.contains(lemma);
+                }
+            };
+
+            Set<Integer> expected = expected(root, lists, ignored);
+            Matches matches = QueryEvaluator.evaluate(root, source);
+            int[] expectedIds = expected == null
+                    ? new int[0]
+                    : expected.stream().mapToInt(Integer::intValue).toArray();
+            assertArrayEquals(expectedIds, matches.pageIds(), root::toString);
+        }
+    }
+
+    @Test
+    void excludedWordRemovesPages() {
+        Map<String, int[]> lists = Map.of("a", new int[]{1, 2, 3, 4}, "b", new int[]{2, 4});
+        QueryEvaluator.TermSource source = new QueryEvaluator.TermSource() {
+            @Override
+            public PostingCursor postings(String lemma) {
+                int[] pageIds = lists.get(lemma);
+                return pageIds == null ? null : new SortedArrayCursor(pageIds, new float[pageIds.length], pageIds.length);
+            }
+
+            @Override
+            public boolean ignored(String lemma) {
+                return false;
+            }
+        };
+        QueryNode root = new And(List.of(new Term("a")), List.of(new Term("b")));
+
+        Matches matches = QueryEvaluator.evaluate(root, source);
+        assertArrayEquals(new int[]{1, 3}, matches.pageIds());
+        assertEquals(2, matches.size());
+    }
+}
@@ -0,0 +1,65 @@
+package searchengine.search;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SentenceBoundariesTest {
+
+    @Test
+    void splitsOnTerminatorsFollowedBySentenceStart() {
+        String text = "Первое предложение. Второе! «Третье» начинается с кавычки? 4 - с цифры… "
+                + "Сокращения т. е. не делятся. Конец";
+        int[] starts = SentenceBoundaries.split(text);
+
+        assertArrayEquals(new int[]{
+                0,
+                text.indexOf("Второе"),
+                text.indexOf("«Третье»"),
+                text.indexOf("4 - с"),
+                text.indexOf("Сокращения"),
+                text.indexOf("Конец")
+        }, starts);
+        assertEquals(0, SentenceBoundaries.sentenceOf(starts, 0));
+        assertEquals(1, SentenceBoundaries.sentenceOf(starts, text.indexOf("Второе")));
+        assertEquals(1, SentenceBoundaries.sentenceOf(starts, text.indexOf("Второе") + 3));
+        assertEquals(starts.length - 1, SentenceBoundaries.sentenceOf(starts, text.length() - 1));
+    }
+
+    @Test
+    void longTextWithoutPunctuationIsSplitBySpaces() {
+        StringBuilder text = new StringBuilder();
+        while (text.length() < 5000) {
+            text.append("слово ");
+        }
+        int[] starts = SentenceBoundaries.split(text);
+
+        assertTrue(starts.length > 1);
+        for (int i = 1; i < starts.length; i++) {
+            assertTrue(starts[i] > starts[i - 1]);
+            // Предложение заканчивается на первом пробеле после MAX_SENTENCE_LENGTH символов
+            assertTrue(starts[i] - starts[i - 1] <= SentenceBoundaries.MAX_SENTENCE_LENGTH + "слово ".length());
+        }
+    }
+
+    @Test
+    void encodeDecodeRoundTrip() {
+        Random random = new Random(13);
+        for (int round = 0; round < 200; round++) {
+            int[] starts = new int[random.nextInt(300)];
+            int start = 0;
+            for (int i = 0; i < starts.length; i++) {
+                starts[i] = start;
+                start += 1 + random.nextInt(random.nextBoolean() ? 100 : 100_000);
+            }
+            assertArrayEquals(starts, SentenceBoundaries.decode(SentenceBoundaries.encode(starts)));
+        }
+        assertArrayEquals(new int[0], SentenceBoundaries.split(""));
+        assertArrayEquals(new int[0], SentenceBoundaries.decode(null));
+        assertArrayEquals(new int[0], SentenceBoundaries.decode(new byte[0]));
+    }
+}
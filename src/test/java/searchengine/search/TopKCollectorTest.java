@@ -0,0 +1,54 @@
+package searchengine.search;
+
+import org.junit.jupiter.api.Test;
+import searchengine.search.PostingIntersection.Matches;
+
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class TopKCollectorTest {
+
+    @Test
+    void keepsBestPagesInDescendingOrder() {
+        TopKCollector topK = new TopKCollector(3);
+        float[] scores = {1, 5, 3, 5, 2, 4};
+        for (int page = 0; page < scores.length; page++) {
+            topK.collect(page + 1, scores[page]);
+        }
+
+        assertEquals(6, topK.totalHits());
+        assertEquals(5, topK.maxScore());
+        Matches top = topK.drainSorted();
+        assertArrayEquals(new float[]{5, 5, 4}, top.scores());
+    }
+
+    @Test
+    void mergeEqualsSingleCollectorOverAllLists() {
+        Random random = new Random(7);
+        for (int round = 0; round < 1000; round++) {
+            int k = 1 + random.nextInt(40);
+            int lists = 1 + random.nextInt(6);
+            List<Matches> sorted = new ArrayList<>();
+            TopKCollector all = new TopKCollector(k);
+            int nextPage = 1;
+            for (int list = 0; list < lists; list++) {
+                // У сайтов свои страницы, поэтому id страниц в списках не пересекаются
+                TopKCollector site = new TopKCollector(k);
+                int size = random.nextInt(60);
+                for (int i = 0; i < size; i++) {
+                    float score = random.nextInt(20);
+                    site.collect(nextPage, score);
+                    all.collect(nextPage++, score);
+                }
+                sorted.add(site.drainSorted());
+            }
+
+            Matches expected = all.drainSorted();
+            Matches merged = TopKCollector.merge(sorted, k);
+            assertArrayEquals(expected.pageIds(), merged.pageIds());
+            assertArrayEquals(expected.scores(), merged.scores());
+        }
+    }
+}
@@ -0,0 +1,81 @@
+package searchengine.services;
+
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import searchengine.config.ConfigLemma;
+import searchengine.utils.ObjectIntHashMap;
+
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class LemmaServiceTest {
+    private static final String[] WORDS = {
+            "Поисковый", "движок", "индексирует", "страницы", "сайтов", "и", "находит", "леммы", "слов",
+            "в", "русском", "тексте", "ёлка", "ёлки", "елки", "зелёная", "бежали", "бегут", "быстро",
+            "search", "engines", "indexed", "running", "pages", "quickly", "the", "and", "of"
+    };
+
+    private static LemmaService lemmaService;
+
+    @BeforeAll
+    static void loadDictionaries() {
+        ConfigLemma config = new ConfigLemma();
+        config.setSnapshotPath(""); // Словари разбираются из jar, снимки не пишутся
+        lemmaService = new LemmaService(config, null, event -> {
+        });
+        lemmaService.init();
+    }
+
+    @AfterAll
+    static void shutdown() {
+        lemmaService.shutdown();
+    }
+
+    // Текст с HTML-разметкой, сущностями и длинными словами, длиной не меньше length символов
+    private static String sampleText(Random random, int length) {
+        StringBuilder text = new StringBuilder(length + 256);
+        while (text.length() < length) {
+            int tag = random.nextInt(8);
+            if (tag == 0) {
+                text.append("<p class=\"text\">");
+            } else if (tag == 1) {
+                text.append("</p>\n");
+            } else if (tag == 2) {
+                text.append("&nbsp;");
+            }
+            String word = WORDS[random.nextInt(WORDS.length)];
+            text.append(random.nextInt(5) == 0 ? word.toUpperCase(Locale.ROOT) : word).append(' ');
+        }
+        return text.toString();
+    }
+
+    private static Map<String, Integer> toMap(ObjectIntHashMap<String> counts) {
+        Map<String, Integer> map = new HashMap<>();
+        counts.forEach(map::put);
+        return map;
+    }
+
+    @Test
+    void lemmatizeAllMatchesExtractLemmas() {
+        Random random = new Random(11);
+        // Большие тексты (1,3 МБ) делятся на части, маленькие обрабатываются целиком
+        List<String> texts = new ArrayList<>();
+        texts.add(sampleText(random, 1_300_000));
+        texts.add(sampleText(random, 200_000));
+        for (int i = 0; i < 20; i++) {
+            texts.add(sampleText(random, random.nextInt(2_000)));
+        }
+        texts.add("");
+
+        List<ObjectIntHashMap<String>> batch = lemmaService.lemmatizeAll(texts);
+
+        assertEquals(texts.size(), batch.size());
+        assertTrue(batch.get(0).size() > 10);
+        for (int i = 0; i < texts.size(); i++) {
+            assertEquals(lemmaService.extractLemmas(texts.get(i)), toMap(batch.get(i)), "текст " + i);
+        }
+    }
+}
@@ -0,0 +1,111 @@
+package searchengine.storage;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import searchengine.config.ConfigContentStore;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ContentStoreTest {
+    @TempDir
+    Path dir;
+
+    private ConfigContentStore config;
+    private ContentStore store;
+
+    @BeforeEach
+    void openStore() {
+        config = new ConfigContentStore();
+        config.setPath(dir.toString());
+        config.setSegmentSize(4096); // Маленькие сегменты: записи расходятся по нескольким файлам
+        config.setCacheSize(4);
+        store = newStore();
+    }
+
+    @AfterEach
+    void closeStore() {
+        store.shutdown();
+    }
+
+    private ContentStore newStore() {
+        ContentStore contentStore = new ContentStore(config);
+        contentStore.init();
+        return contentStore;
+    }
+
+    private static String randomText(Random random, int length) {
+        StringBuilder text = new StringBuilder(length);
+        String alphabet = "абвгдеёжзийклмнопрстуфхцчшщъыьэюя abcdefghijklmnopqrstuvwxyz<>&\n";
+        for (int i = 0; i < length; i++) {
+            text.append(alphabet.charAt(random.nextInt(alphabet.length())));
+        }
+        return text.toString();
+    }
+
+    @Test
+    void recordsRoundTripAcrossSegments() {
+        Random random = new Random(17);
+        Map<Long, String> texts = new LinkedHashMap<>();
+        Map<Long, byte[]> blobs = new LinkedHashMap<>();
+        for (int i = 0; i < 200; i++) {
+            String text = randomText(random, random.nextInt(3000) + 1);
+            texts.put(store.write(1, 2, text), text);
+            byte[] blob = new byte[random.nextInt(500) + 1];
+            random.nextBytes(blob);
+            blobs.put(store.write(1, 2, blob), blob);
+        }
+
+        Set<Integer> segments = new HashSet<>();
+        for (Long ref : texts.keySet()) {
+            segments.add((int) (ref >>> 48));
+        }
+        assertTrue(segments.size() > 1);
+        // Повторное чтение идёт мимо вытесненного кэша
+        for (int pass = 0; pass < 2; pass++) {
+            texts.forEach((ref, text) -> assertEquals(text, store.read(1, 2, ref)));
+            blobs.forEach((ref, blob) -> assertArrayEquals(blob, store.readBytes(1, 2, ref)));
+        }
+    }
+
+    @Test
+    void emptyContentHasNoRecord() {
+        assertNull(store.write(1, 1, (String) null));
+        assertNull(store.write(1, 1, ""));
+        assertNull(store.write(1, 1, new byte[0]));
+        assertEquals("", store.read(1, 1, null));
+        assertArrayEquals(new byte[0], store.readBytes(1, 1, null));
+    }
+
+    @Test
+    void reopenedStoreReadsOldRecordsAndAppendsToNewSegment() {
+        Long first = store.write(3, 1, "первая запись");
+        store.shutdown();
+
+        store = newStore();
+        Long second = store.write(3, 1, "вторая запись");
+
+        assertNotEquals(first >>> 48, second >>> 48);
+        assertEquals("первая запись", store.read(3, 1, first));
+        assertEquals("вторая запись", store.read(3, 1, second));
+    }
+
+    @Test
+    void dropGenerationRemovesOnlyItsDirectory() {
+        Long kept = store.write(5, 1, "старое поколение");
+        store.write(5, 2, "новое поколение");
+
+        store.dropGeneration(5, 2);
+        assertFalse(Files.exists(dir.resolve("5").resolve("2")));
+        assertEquals("старое поколение", store.read(5, 1, kept));
+
+        store.dropGeneration(5, 1);
+        store.dropSiteIfEmpty(5);
+        assertFalse(Files.exists(dir.resolve("5")));
+    }
+}
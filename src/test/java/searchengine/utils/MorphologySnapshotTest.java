@@ -0,0 +1,56 @@
+package searchengine.utils;
+
+import org.apache.lucene.morphology.english.EnglishLetterDecoderEncoder;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class MorphologySnapshotTest {
+    private static final String RESOURCE = "/org/apache/lucene/morphology/english/morph.info";
+
+    @TempDir
+    Path dir;
+
+    private MorphologySnapshot.Loaded load(Path snapshot) throws IOException {
+        return MorphologySnapshot.load(RESOURCE, new EnglishLetterDecoderEncoder(), snapshot);
+    }
+
+    @Test
+    void snapshotGivesSameNormalFormsAsDictionary() throws IOException {
+        Path snapshot = dir.resolve("english.bin");
+        MorphologySnapshot.Loaded parsed = load(snapshot);
+        MorphologySnapshot.Loaded mapped = load(snapshot);
+
+        assertEquals("jar", parsed.source());
+        assertEquals("snapshot", mapped.source());
+        for (String word : new String[]{"running", "pages", "indexed", "mice", "better"}) {
+            assertEquals(parsed.morphology().getNormalForms(word), mapped.morphology().getNormalForms(word), word);
+            assertEquals(parsed.morphology().getMorphInfo(word), mapped.morphology().getMorphInfo(word), word);
+        }
+    }
+
+    @Test
+    void snapshotWithOtherChecksumIsRebuilt() throws IOException {
+        Path snapshot = dir.resolve("english.bin");
+        load(snapshot);
+
+        // Та же длина словаря, другая контрольная сумма: как у обновлённого словаря той же длины
+        try (FileChannel channel = FileChannel.open(snapshot, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            ByteBuffer crc = ByteBuffer.allocate(Long.BYTES);
+            channel.read(crc, Integer.BYTES + Long.BYTES);
+            crc.flip();
+            long stale = crc.getLong() ^ 1;
+            channel.write(ByteBuffer.allocate(Long.BYTES).putLong(0, stale), Integer.BYTES + Long.BYTES);
+        }
+
+        assertEquals("jar", load(snapshot).source());
+        assertEquals("snapshot", load(snapshot).source());
+    }
+}